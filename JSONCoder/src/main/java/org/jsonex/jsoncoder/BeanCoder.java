@@ -16,13 +16,21 @@ import org.jsonex.jsoncoder.coder.CoderArray;
 import org.jsonex.jsoncoder.coder.CoderCollection;
 import org.jsonex.jsoncoder.coder.CoderMap;
 import org.jsonex.jsoncoder.coder.CoderObject;
+import org.jsonex.jsoncoder.coder.ClassCodecPlan.PropertyPlan;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.TDPath;
 import org.jsonex.treedoc.TreeDoc;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONPullParser.Token;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 import org.jsonex.treedoc.json.TDJSONWriter;
 
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import static org.jsonex.core.util.ClassUtil.objectToSimpleType;
@@ -37,6 +45,9 @@ import static org.jsonex.core.util.ClassUtil.objectToSimpleType;
  * <p>As this encoder won't store any type information, it will only infer the type from the class.
  * For collections fields, the element type information has to be specified with generic type. If not specified, the $type attribute
  * need to be provided. Otherwise
+ *
+ * <p>The object can also be written directly as JSON tokens with {@link TDJSONStreamWriter}, which avoids building the
+ * intermediate TDNode tree.
  */
 @SuppressWarnings({"WeakerAccess"})
 public class BeanCoder {
@@ -47,6 +58,20 @@ public class BeanCoder {
   public TDNode encode(Object obj) { return encode(obj, new BeanCoderContext(JSONCoderOption.global), null); }
   public TDNode encode(Object obj, BeanCoderContext context, Type type) { return _encode(obj, context.reset(), type, new TreeDoc().getRoot()); }
 
+  /**
+   * Encode the object and write it to the stream writer without building the whole TDNode tree. If the option requires the
+   * whole tree (e.g. dedupWithRef or JSON node filters), it falls back to build the tree first.
+   */
+  public void encode(Object obj, BeanCoderContext context, Type type, TDJSONStreamWriter out) {
+    JSONCoderOption opt = context.getOption();
+    if (opt.isDedupWithRef() || !opt.getJsonOption().getNodeFilters().isEmpty()) {
+      out.node(encode(obj, context, type));
+      return;
+    }
+    if (!_write(obj, context.reset(), type, out))
+      out.value(null);
+  }
+
   public Object decode(TDNode obj, Type type) { return decode(obj, type, null, "", new BeanCoderContext(JSONCoderOption.global)); }
   @SuppressWarnings("unchecked")
   public <T> T decode(TDNode obj, T target) {
@@ -93,12 +118,10 @@ public class BeanCoder {
 
       //Prevent too many objects or cyclic reference.
       try {
-        int p = ctx.objectPath.indexOf(eqWrapper);
-        if (p >= 0) {
-          return setRef(target, StringUtil.appendRepeatedly(new StringBuilder(), p + 1, "../").toString());
-        }
+        if (ctx.objectPath.contains(eqWrapper))  // O(1) check, the depth is only computed for cyclic reference
+          return setRef(target, cyclicRef(ctx, eqWrapper));
       } catch(ClassCastException | IllegalArgumentException e) {
-        // Workaround for some class that breaks equals() contract by doing caste before type check, or asset the type
+        // Workaround for EqualsWrapper that breaks equals() contract by doing caste before type check, or asset the type
         // We will ignore this error
       }
 
@@ -121,7 +144,7 @@ public class BeanCoder {
       //Don't put empty collection and map as the hashCode method is not implemented properly
       if (! ((obj instanceof Collection) && ((Collection<?>)obj).isEmpty() ||
           (obj instanceof Map) && ((Map<?, ?>)obj).isEmpty())) {
-        ctx.objectPath.push(eqWrapper);
+        pushPath(ctx, eqWrapper);
       }
 
       if (cls.isArray()) {   //Handle it as any array
@@ -146,6 +169,104 @@ public class BeanCoder {
     }
   }
 
+  /**
+   * Streaming version of {@link #_encode}, should only be called internally during recursion.
+   *
+   * @return false if nothing is written, which is equivalent to a SIMPLE TDNode with null value
+   */
+  @SuppressWarnings("unchecked")
+  boolean _write(Object obj, BeanCoderContext ctx, Type type, TDJSONStreamWriter out) {
+    JSONCoderOption opt = ctx.getOption();
+    int pathSize = ctx.objectPath.size();
+    try {
+      if (obj == null)
+        return false;
+
+      Class<?> cls = obj.getClass();
+      if(obj.getClass().getName().startsWith("java.lang.reflect.") ||
+          cls == Object.class || cls == BigDecimal.class) {
+        out.value(obj.toString());
+        return true;
+      }
+
+      if (ClassUtil.isSimpleType(cls)) {
+        out.value(obj);
+        return true;
+      }
+
+      if (opt.isClassSkipped(cls))
+        return false;
+
+      // Custom coders only produce TDNode, the small subtree is written as is
+      @SuppressWarnings("rawtypes")
+      ICoder coder = opt.findCoder(cls);
+      if (coder != null) {
+        TDNode node = coder.encode(obj, type, ctx, new TreeDoc().getRoot());
+        if (node.getType() == TDNode.Type.SIMPLE && node.getValue() == null)
+          return false;
+        out.node(node);
+        return true;
+      }
+
+      Object eqWrapper = opt.getEqualsWrapper(obj);
+
+      try {
+        if (ctx.objectPath.contains(eqWrapper)) {
+          writeRef(out, cyclicRef(ctx, eqWrapper));
+          return true;
+        }
+      } catch(ClassCastException | IllegalArgumentException e) {
+        // Same workaround as _encode() for classes that break equals() contract
+      }
+
+      if (ctx.objectCount++ > opt.maxObjects || ctx.objectPath.size() > opt.maxDepth) {
+        out.value("[TRIMMED_DUE_TO_TOO_MANY_OBJECT]");
+        return true;
+      }
+
+      if (! ((obj instanceof Collection) && ((Collection<?>)obj).isEmpty() ||
+          (obj instanceof Map) && ((Map<?, ?>)obj).isEmpty())) {
+        pushPath(ctx, eqWrapper);
+      }
+
+      if (cls.isArray())
+        CoderArray.get().write(obj, type, ctx, out);
+      else if (obj instanceof Collection)
+        CoderCollection.get().write((Collection<?>)obj, type, ctx, out);
+      else if (obj instanceof Map)
+        CoderMap.get().write((Map<?,?>)obj, type, ctx, out);
+      else
+        CoderObject.get().write(obj, type, ctx, out);
+      return true;
+    } catch (UncheckedIOException ex) {
+      throw ex;  // Error from the output, no point to continue
+    } catch (Throwable ex) {
+      throw new BeanCoderException(ex);
+    } finally{
+      if(ctx.objectPath.size() > pathSize) {
+        ctx.objectPath.pop();
+      }
+    }
+  }
+
+  private static void pushPath(BeanCoderContext ctx, Object eqWrapper) {
+    try {
+      ctx.objectPath.push(eqWrapper);
+    } catch(ClassCastException | IllegalArgumentException e) {
+      // Same workaround as contains() for classes that break equals() contract, push a placeholder to keep the depth
+      ctx.objectPath.push(null);
+    }
+  }
+
+  /** Relative reference to the object in the current path, e.g. "../../" */
+  private static String cyclicRef(BeanCoderContext ctx, Object eqWrapper) {
+    return StringUtil.appendRepeatedly(new StringBuilder(), ctx.objectPath.indexOf(eqWrapper) + 1, "../").toString();
+  }
+
+  private static void writeRef(TDJSONStreamWriter out, String ref) {
+    out.startMap().key(TDNode.REF_KEY).value(ref).endMap();
+  }
+
   private static TDNode setRef(TDNode node, String ref) {
     node.setType(TDNode.Type.MAP).createChild(TDNode.REF_KEY).setValue(ref);
     return node;
@@ -203,6 +324,161 @@ public class BeanCoder {
     }
   }
 
+  /**
+   * Decode the current value of the pull parser without building the whole TDNode tree. The current token should be the
+   * first token of the value, i.e. VALUE, START_MAP or START_ARRAY. After return, the current token is the last token of
+   * the value.
+   *
+   * <p>Java beans, maps, arrays and collections are decoded directly from the tokens. For other cases, e.g. types with
+   * custom coders, the value is read as a small TDNode subtree and decoded by {@link #decode(TDNode, Type, Object, String,
+   * BeanCoderContext)}. "$ref" is resolved with the objects decoded so far. It's expected to be the first key of the map
+   * as it's written by the encoder, otherwise the keys before it are decoded and discarded.
+   */
+  public Object decode(TDJSONPullParser parser, Type type, Object targetObj, String name, BeanCoderContext ctx) {
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    int pathSize = ctx.objectPath.size();
+    try {
+      switch (parser.getToken()) {
+        case START_MAP:
+          if (parser.next() == Token.KEY && TDNode.REF_KEY.equals(parser.getKey())) {
+            if (parser.next() == Token.VALUE && parser.getValue() instanceof String)
+              return resolveRef(parser, ctx);
+            parser.skip();  // Invalid reference, ignore it
+            parser.next();
+          }
+          if (isStreamable(cls, ctx)) {
+            return Map.class.isAssignableFrom(cls)
+                ? CoderMap.get().decode(parser, type, targetObj, ctx)
+                : CoderObject.get().decode(parser, type, targetObj, ctx);
+          }
+          return decode(parser.readChildren(new TreeDoc().getRoot().setType(TDNode.Type.MAP)), type, targetObj, name, ctx);
+        case START_ARRAY:
+          if (cls != null && ctx.option.findCoder(cls) == null) {
+            if (cls.isArray())
+              return CoderArray.get().decode(parser, type, targetObj, ctx);
+            if (Collection.class.isAssignableFrom(cls))
+              return CoderCollection.get().decode(parser, type, targetObj, ctx);
+          }
+          break;
+        case VALUE:
+          Object result = objectToSimpleType(parser.getValue(), cls);
+          if (result != null)
+            return result;
+          break;
+        default:
+      }
+      return decode(parser.readNode(new TreeDoc().getRoot()), type, targetObj, name, ctx);
+    } catch(Throwable e) {
+      throw new BeanCoderException("failed to decode:"+type + "; name=" + name, e);
+    } finally {
+      while (ctx.objectPath.size() > pathSize)
+        ctx.objectPath.pop();
+    }
+  }
+
+  /** If a map can be decoded to the class directly from tokens */
+  private static boolean isStreamable(Class<?> cls, BeanCoderContext ctx) {
+    return cls != null
+        && ctx.option.findCoder(cls) == null
+        && cls != String.class
+        && !cls.isAssignableFrom(TDNode.class)
+        && !cls.isArray()
+        && !Collection.class.isAssignableFrom(cls);
+  }
+
+  /**
+   * Resolve "$ref" during streaming decoding, the current token is the string value of "$ref". Same as the TDNode
+   * version, the map is decoded as the referenced object, and the rest of the map is skipped. If "$ref" is not the first
+   * key, the object of the map should be popped from the object path before calling it.
+   */
+  public static Object resolveRef(TDJSONPullParser parser, BeanCoderContext ctx) {
+    Object result = resolveRef((String) parser.getValue(), ctx);
+    parser.skipToEnd();
+    return result;
+  }
+
+  /**
+   * Resolve $ref during streaming decoding. Relative path is resolved with the objects in the current decoding path,
+   * "#id" with the objects decoded from map with $id, and the children are resolved with the decoded objects. "#id" of
+   * an object not decoded yet, i.e. forward reference, is resolved as null, same as the TDNode version.
+   */
+  private static Object resolveRef(String ref, BeanCoderContext ctx) {
+    Object result = null;
+    boolean started = false;
+    int level = 0;
+    for (TDPath.Part part : TDPath.parse(ref).getParts()) {
+      switch (part.getType()) {
+        case RELATIVE:
+          if (started)
+            throw new BeanCoderException("Relative reference in the middle of the path is not supported: ref:" + ref);
+          level += part.getLevel();
+          continue;
+        case ROOT:
+          result = ctx.objectPath.isEmpty() ? null : ctx.objectPath.getLast();
+          break;
+        case CHILD_OR_ID:
+          result = ctx.idToObjectMap.containsKey(part.getId())
+              ? ctx.idToObjectMap.get(part.getId())
+              : started ? getChildObject(result, part.getKey(), ctx) : null;
+          break;
+        case CHILD:
+          if (!started)
+            result = getAncestor(level, ctx);
+          result = getChildObject(result, part.getKey(), ctx);
+          break;
+        default:
+      }
+      started = true;
+      if (result == null)
+        break;
+    }
+
+    if (!started)  // Level 0, e.g. "/", is the root
+      result = level == 0 ? ctx.objectPath.isEmpty() ? null : ctx.objectPath.getLast() : getAncestor(level, ctx);
+    if (result == null && !ref.startsWith("#"))
+      throw new BeanCoderException("Reference is not found: ref:" + ref);
+    return result;
+  }
+
+  private static Object getAncestor(int level, BeanCoderContext ctx) {
+    return level > 0 && level <= ctx.objectPath.size() ? ctx.objectPath.get(level - 1) : null;
+  }
+
+  private static Object getChildObject(Object obj, String key, BeanCoderContext ctx) {
+    if (obj == null)
+      return null;
+
+    if (obj instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) obj;
+      if (map.containsKey(key))
+        return map.get(key);
+      for (Map.Entry<?, ?> entry : map.entrySet())  // Non-string keys
+        if (key.equals(String.valueOf(entry.getKey())))
+          return entry.getValue();
+      return null;
+    }
+
+    if (obj instanceof Collection || obj.getClass().isArray()) {
+      int idx;
+      try {
+        idx = Integer.parseInt(key);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (obj.getClass().isArray())
+        return idx >= 0 && idx < Array.getLength(obj) ? Array.get(obj, idx) : null;
+      if (obj instanceof List)
+        return idx >= 0 && idx < ((List<?>) obj).size() ? ((List<?>) obj).get(idx) : null;
+      for (Object o : (Collection<?>) obj)
+        if (idx-- == 0)
+          return o;
+      return null;
+    }
+
+    PropertyPlan prop = ctx.option.getCodecPlan(obj.getClass()).getDecodeProperty(key);
+    return prop == null || !prop.getProperty().isReadable(true) ? null : prop.get(obj);
+  }
+
   //Create this method just to avoid findbug issues.
   private static int abs(int a) { return a < 0 ? -a : a; }
 }
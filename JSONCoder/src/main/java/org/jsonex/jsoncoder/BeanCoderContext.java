@@ -10,24 +10,59 @@
 package org.jsonex.jsoncoder;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.LinkedList;
 import java.util.Map;
 
 /**
  * Context object for BeanCoder, it will save session information during encoding and provide a
  * way to let client to customize the encode behavior.
+ *
+ * <p>To avoid allocations for each call, a context can be reused within the thread with {@link #acquire} and
+ * {@link #release()}.
  */
-@RequiredArgsConstructor
 public class BeanCoderContext {
+  /** Context with more objects than this is not reused, to avoid holding large maps */
+  private final static int MAX_REUSE_SIZE = 1024;
+  private final static ThreadLocal<BeanCoderContext> pooled = new ThreadLocal<>();
+
   private int nextId = 1;   // The next id for $ref
   int objectCount = 0;
-  @Getter final JSONCoderOption option;
+  @Getter JSONCoderOption option;
+  private boolean inUse;
+
+  public BeanCoderContext(JSONCoderOption option) { this.option = option; }
+
+  /**
+   * Get the context of current thread, a new context is returned if it's in use, e.g. encode is called inside a custom
+   * coder. The context should be released with {@link #release()} after use, and shouldn't be used after that.
+   */
+  public static BeanCoderContext acquire(JSONCoderOption option) {
+    BeanCoderContext ctx = pooled.get();
+    if (ctx == null)
+      pooled.set(ctx = new BeanCoderContext(option));
+    else if (ctx.inUse)
+      return new BeanCoderContext(option);
+    ctx.option = option;
+    ctx.inUse = true;
+    return ctx;
+  }
+
+  /** Reset the context so that it can be reused by next {@link #acquire} in the same thread */
+  public void release() {
+    if (pooled.get() != this)
+      return;
+    if (objectCount + objToNodeMap.size() + nodeToObjectMap.size() + idToObjectMap.size() + objectPath.size() > MAX_REUSE_SIZE)
+      pooled.remove();  // Cleared maps keep the capacity
+    reset();
+    option = null;
+    inUse = false;
+  }
 
   /**
    * Used only for encoding, remember encoded objects to be used to dedupWithreference
@@ -41,13 +76,21 @@ public class BeanCoderContext {
   @Getter final Map<TDNode, Object> nodeToObjectMap = new HashMap<>();
 
   /**
-   * The current path of the encoding or decoding, mainly used as Deque (Stack), use LinkedList here as we also need random access
+   * Used only for streaming decoding, objects decoded from map with $id, key is the id
    */
-  @Getter final LinkedList<Object> objectPath = new LinkedList<>();
+  @Getter final Map<String, Object> idToObjectMap = new HashMap<>();
+
+  /**
+   * The current path of the encoding or decoding, used as a stack
+   */
+  @Getter final ObjectPath objectPath = new ObjectPath();
 
   public BeanCoderContext reset() {
+    nextId = 1;
+    objectCount = 0;
     objToNodeMap.clear();
     nodeToObjectMap.clear();
+    idToObjectMap.clear();
     objectPath.clear();
     return this;
   }
@@ -58,7 +101,22 @@ public class BeanCoderContext {
     return BeanCoder.get()._encode(obj, this, type, target);
   }
 
+  /** @return false if nothing is written for the object, e.g. it's null or skipped */
+  public boolean write(Object obj, Type type, TDJSONStreamWriter out) {
+    return BeanCoder.get()._write(obj, this, type, out);
+  }
+
+  /** Write the object, or null if nothing is written for it, used for array elements and map values */
+  public void writeOrNull(Object obj, Type type, TDJSONStreamWriter out) {
+    if (!write(obj, type, out))
+      out.value(null);
+  }
+
   public Object decode(TDNode jsonNode, Type type, Object targetObj, String name) {
     return BeanCoder.get().decode(jsonNode, type, targetObj, name, this);
   }
+
+  public Object decode(TDJSONPullParser parser, Type type, Object targetObj, String name) {
+    return BeanCoder.get().decode(parser, type, targetObj, name, this);
+  }
 }
@@ -11,12 +11,16 @@ package org.jsonex.jsoncoder;
 
 import org.jsonex.core.charsource.CharSource;
 import org.jsonex.core.util.Assert;
+import org.jsonex.core.util.Utf8Sink;
 import org.jsonex.treedoc.TDNode;
 import org.jsonex.treedoc.TDPath;
 import org.jsonex.treedoc.json.TDJSONParser;
-import org.jsonex.treedoc.json.TDJSONWriter;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 import lombok.Getter;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 
@@ -35,6 +39,16 @@ public class JSONCoder {
     try {
       TDNode tdNode = req.tdNode;
       if (tdNode == null && req.source != null) {
+        if (req.nodePath == null) {  // Decode directly from the tokens without building the tree
+          TDJSONPullParser parser = new TDJSONPullParser(req.source, opt.getJsonOption());
+          parser.next();
+          BeanCoderContext ctx = BeanCoderContext.acquire(opt);
+          try {
+            return (T) BeanCoder.get().decode(parser, req.getType(), req.target, "", ctx);
+          } finally {
+            ctx.release();
+          }
+        }
         tdNode = TDJSONParser.get().parse(req.source, opt.getJsonOption());
       }
 
@@ -44,7 +58,12 @@ public class JSONCoder {
       if (tdNode == null)
         return null;
 
-      return (T) BeanCoder.get().decode(tdNode, req.getType(), req.target, "", new BeanCoderContext(opt));
+      BeanCoderContext ctx = BeanCoderContext.acquire(opt);
+      try {
+        return (T) BeanCoder.get().decode(tdNode, req.getType(), req.target, "", ctx);
+      } finally {
+        ctx.release();
+      }
     } catch (Exception e) {
       if (e instanceof BeanCoderException)
         throw (BeanCoderException)e;
@@ -88,8 +107,12 @@ public class JSONCoder {
       if (writer == null) {
         writer = sWriter = new StringBuilder();
       }
-      TDNode jsonNode = BeanCoder.get().encode(req.object, new BeanCoderContext(opt), req.type);
-      TDJSONWriter.get().write(writer, jsonNode, opt.getJsonOption());
+      BeanCoderContext ctx = BeanCoderContext.acquire(opt);
+      try {
+        BeanCoder.get().encode(req.object, ctx, req.type, new TDJSONStreamWriter(writer, opt.getJsonOption()));
+      } finally {
+        ctx.release();
+      }
       return sWriter == null ? null : sWriter.toString();
     } catch (Exception e) {
       throw new BeanCoderException(e);
@@ -98,7 +121,19 @@ public class JSONCoder {
   public static String encode(Object obj, JSONCoderOption opt) { return encode(EncodeReq.of(obj), opt); }
   public static void encode(Object obj, Writer writer, JSONCoderOption opt) { encode(EncodeReq.of(obj).setWriter(writer), opt); }
 
+  /** Encode as UTF-8 bytes to the stream without charset encoder. The stream is flushed but not closed */
+  public static void encode(Object obj, OutputStream out, JSONCoderOption opt) {
+    Utf8Sink sink = new Utf8Sink(out);
+    encode(EncodeReq.of(obj).setWriter(sink), opt);
+    try {
+      sink.flush();
+    } catch (IOException e) {
+      throw new BeanCoderException(e);
+    }
+  }
+
   public String encode(EncodeReq req) { return encode(req, option); }
   public String encode(Object obj) { return encode(obj, option); }
   public void encode(Object obj, Writer writer) { encode(obj, writer, option); }
+  public void encode(Object obj, OutputStream out) { encode(obj, out, option); }
 }
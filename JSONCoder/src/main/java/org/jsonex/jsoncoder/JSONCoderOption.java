@@ -10,7 +10,7 @@
 package org.jsonex.jsoncoder;
 
 import lombok.Getter;
-import lombok.Setter;
+import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 import org.jsonex.core.factory.CacheThreadLocal;
@@ -56,48 +56,50 @@ public class JSONCoderOption {
         .addFilterFor(AtomicReference.class, exclude("acquire", "opaque", "plain"));
   }
   private final JSONCoderOption parent;
+  /** Frozen option is immutable and has no parent, see {@link #freeze()} */
+  @Getter private final boolean frozen;
 
-  @Getter @Setter int maxObjects = 10_000;
-  @Getter @Setter int maxDepth = 30;
-  @Getter @Setter int maxElementsPerNode = 2000;
+  @Getter int maxObjects = 10_000;
+  @Getter int maxDepth = 30;
+  @Getter int maxElementsPerNode = 2000;
 
   /**
    * If true, when convert from an java bean, the readonly field will be ignored
    */
-  @Getter @Setter boolean ignoreReadOnly;
+  @Getter boolean ignoreReadOnly;
   
   /**
    * If true, subclass field won't be encoded
    */
-  @Getter @Setter boolean ignoreSubClassFields;
+  @Getter boolean ignoreSubClassFields;
     
   /**
    * If true, enum name will be encoded
    */
-  @Getter @Setter boolean showEnumName;
+  @Getter boolean showEnumName;
   
   /**
    * If true, class type will be encoded
    */
-  @Getter @Setter boolean showType;
+  @Getter boolean showType;
   
   /**
    * If true, duplicated object will be serialized as a reference to existing object's hash
    */
-  @Getter @Setter boolean dedupWithRef;
+  @Getter boolean dedupWithRef;
   
   /**
    * If true, for java bean type, only field include private will be returned, no setter getter method will be returned.
    */
-  @Getter @Setter boolean showPrivateField;
+  @Getter boolean showPrivateField;
   
-  @Getter @Setter String parsingDateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSX";
+  @Getter String parsingDateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSX";
   /**
    * Used by {@link CoderDate}.encode()}, If Date format is null, date will be encoded as long with value of Date.getTime()
    */
-  @Getter @Setter String dateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSX";
+  @Getter String dateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSX";
   /** Used by {@link CoderDate}.encode, by default it will use default timezone, a custom timezone can be specified*/
-  @Getter @Setter TimeZone timeZone = null;
+  @Getter TimeZone timeZone = null;
   public TimeZone timeZoneOrParent() { return orElse(timeZone, safe(parent, JSONCoderOption::getTimeZone)); }
 
   // For performance reason, we need to cache SimpleDateFormat in the same thread as SimpleDateFormat is not threadsafe
@@ -118,24 +120,24 @@ public class JSONCoderOption {
 
   /** Internal use only */
 
-  @Getter private final List<String> fallbackDateFormats = new ArrayList<>();
+  @Getter private final List<String> fallbackDateFormats;
   
-  @Getter @Setter boolean alwaysMapKeyAsString;
+  @Getter boolean alwaysMapKeyAsString;
   
   /**
    * Used by de-serializer, indicate throw exception if there's unknown field.
    */
-  @Getter @Setter boolean errorOnUnknownProperty;
+  @Getter boolean errorOnUnknownProperty;
   
-  @Getter private final Set<Class<?>> skippedClasses = new HashSet<>();
-  @Getter private final Set<String> skippedPackages = new HashSet<>();
+  @Getter private final Set<Class<?>> skippedClasses;
+  @Getter private final Set<String> skippedPackages;
   
   //The class in this list, subclass field will be ignored.
-  @Getter private final Set<Class<?>> ignoreSubClassFieldsClasses = new HashSet<>();
+  @Getter private final Set<Class<?>> ignoreSubClassFieldsClasses;
 
 
-  @Getter private final List<Pair<Class<?>, FieldTransformer>> filters = new ArrayList<>();
-  @Getter private final List<ICoder<?>> coderList = new ArrayList<>();
+  @Getter private final List<Pair<Class<?>, FieldTransformer>> filters;
+  @Getter private final List<ICoder<?>> coderList;
   
   /**
    * used to override equals and hashCode methods for certain object
@@ -146,10 +148,10 @@ public class JSONCoderOption {
    * need to use equalsWrapper.add(0, wrapper).
    * 
    */
-  @Getter private final List<EqualsWrapper<?>> equalsWrapper = new ArrayList<>();
+  @Getter private final List<EqualsWrapper<?>> equalsWrapper;
   
   // JSON coder config
-  @Getter @Setter private TDJSONOption jsonOption = new TDJSONOption();
+  @Getter private TDJSONOption jsonOption = new TDJSONOption();
 
   public enum LogLevel {
     OFF { public void log(Logger log, String msg, Throwable e) { /* Noop */ }},
@@ -160,41 +162,261 @@ public class JSONCoderOption {
     ;
     public abstract void log(Logger logger, String message, Throwable e);
   }
-  @Getter @Setter private LogLevel warnLogLevel = LogLevel.INFO;
+  @Getter private LogLevel warnLogLevel = LogLevel.INFO;
 
   /**
    * Accept specified sub-class using `$type` attribute. This feature is disabled by default for security reason
    */
-  @Getter @Setter private boolean allowPolymorphicClasses = false;
+  @Getter private boolean allowPolymorphicClasses = false;
 
   /**
    * Merge array. By default, when decode to exiting object, array or collection will be override instead of merge.
    * If this set true, it will merge the array (concatenation)
    */
-  @Getter @Setter private boolean mergeArray = false;
+  @Getter private boolean mergeArray = false;
 
   /**
    * As Java Map and Set implementation, the order may not be strictly consistent cross JVM implementation
    * set this to true, it will sort the keys in a predicated order
    */
-  @Getter @Setter private boolean strictOrder = false;
+  @Getter private boolean strictOrder = false;
+
+  /**
+   * Cache of ClassCodecPlan and ClassInfo. As option could inherit settings from parent, the cache will be discarded if
+   * this option or any of its parents is mutated (chainModCount changed). Mutation is expected to happen only during
+   * initialization.
+   */
+  @RequiredArgsConstructor
+  private static class Caches {
+    final long chainModCount;
+    final ClassValue<ClassCodecPlan> plans;
+    final ClassValue<ClassInfo> classInfos;
+  }
+  private volatile Caches caches;
+  /** Number of mutations of this option, see {@link #touch()} */
+  private volatile int modCount;
+
+  /** Resolved results of the lookups by class, which would otherwise scan the lists of this option and parents */
+  private static class ClassInfo {
+    final ICoder<?> coder;
+    final boolean skipped;
+    final EqualsWrapper<?> equalsWrapper;
+    final boolean ignoreSubClassFields;
+
+    ClassInfo(Class<?> cls, JSONCoderOption opt) {
+      coder = opt._findCoder(cls);
+      skipped = opt._isClassSkipped(cls);
+      equalsWrapper = opt._findEqualsWrapper(cls);
+      ignoreSubClassFields = opt._isIgnoreSubClassFields(cls);
+    }
+  }
 
   public JSONCoderOption() { this(global); }
-  private JSONCoderOption(JSONCoderOption parent) { this.parent = parent; }
+  private JSONCoderOption(JSONCoderOption parent) {
+    this.parent = parent;
+    frozen = false;
+    fallbackDateFormats = new ArrayList<>();
+    skippedClasses = new TouchingSet<>();
+    skippedPackages = new TouchingSet<>();
+    ignoreSubClassFieldsClasses = new TouchingSet<>();
+    filters = new TouchingList<>();
+    coderList = new TouchingList<>();
+    equalsWrapper = new TouchingList<>();
+  }
+
+  /** List calls {@link #touch()} when it's changed, so that the list returned by getter can be changed directly */
+  private class TouchingList<E> extends AbstractList<E> implements RandomAccess {
+    private final List<E> list = new ArrayList<>();
+
+    @Override public E get(int index) { return list.get(index); }
+    @Override public int size() { return list.size(); }
+
+    @Override public E set(int index, E element) {
+      E result = list.set(index, element);
+      touch();
+      return result;
+    }
+
+    @Override public void add(int index, E element) {
+      list.add(index, element);
+      touch();
+    }
+
+    @Override public E remove(int index) {
+      E result = list.remove(index);
+      touch();
+      return result;
+    }
+  }
+
+  /** Same as {@link TouchingList} for set */
+  private class TouchingSet<E> extends AbstractSet<E> {
+    private final Set<E> set = new HashSet<>();
+
+    @Override public int size() { return set.size(); }
+    @Override public boolean contains(Object o) { return set.contains(o); }
+
+    @Override public boolean add(E e) {
+      boolean result = set.add(e);
+      touch();
+      return result;
+    }
+
+    @Override public boolean remove(Object o) {
+      boolean result = set.remove(o);
+      touch();
+      return result;
+    }
+
+    @Override public Iterator<E> iterator() {
+      Iterator<E> it = set.iterator();
+      return new Iterator<E>() {
+        @Override public boolean hasNext() { return it.hasNext(); }
+        @Override public E next() { return it.next(); }
+        @Override public void remove() {
+          it.remove();
+          touch();
+        }
+      };
+    }
+  }
+
+  /** Snapshot of src with the settings of parents flattened, the order of the lists is the same as lookup order */
+  private JSONCoderOption(JSONCoderOption src, boolean frozen) {
+    parent = null;
+    this.frozen = frozen;
+    maxObjects = src.maxObjects;
+    maxDepth = src.maxDepth;
+    maxElementsPerNode = src.maxElementsPerNode;
+    ignoreReadOnly = src.ignoreReadOnly;
+    showEnumName = src.showEnumName;
+    showType = src.showType;
+    dedupWithRef = src.dedupWithRef;
+    showPrivateField = src.showPrivateField;
+    parsingDateFormat = src.parsingDateFormat;
+    dateFormat = src.dateFormat;
+    timeZone = src.timeZoneOrParent();
+    alwaysMapKeyAsString = src.alwaysMapKeyAsString;
+    errorOnUnknownProperty = src.errorOnUnknownProperty;
+    jsonOption = src.jsonOption;
+    warnLogLevel = src.warnLogLevel;
+    allowPolymorphicClasses = src.allowPolymorphicClasses;
+    mergeArray = src.mergeArray;
+    strictOrder = src.strictOrder;
+
+    List<String> dateFormats = new ArrayList<>();
+    Set<Class<?>> skipped = new HashSet<>();
+    Set<String> packages = new HashSet<>();
+    Set<Class<?>> ignoreSubClasses = new HashSet<>();
+    List<Pair<Class<?>, FieldTransformer>> allFilters = new ArrayList<>();
+    List<ICoder<?>> coders = new ArrayList<>();
+    List<EqualsWrapper<?>> wrappers = new ArrayList<>();
+    for (JSONCoderOption opt = src; opt != null; opt = opt.parent) {
+      ignoreSubClassFields |= opt.ignoreSubClassFields;
+      dateFormats.addAll(opt.fallbackDateFormats);
+      skipped.addAll(opt.skippedClasses);
+      packages.addAll(opt.skippedPackages);
+      ignoreSubClasses.addAll(opt.ignoreSubClassFieldsClasses);
+      allFilters.addAll(opt.filters);
+      coders.addAll(opt.coderList);
+      wrappers.addAll(opt.equalsWrapper);
+    }
+    fallbackDateFormats = Collections.unmodifiableList(dateFormats);
+    skippedClasses = Collections.unmodifiableSet(skipped);
+    skippedPackages = Collections.unmodifiableSet(packages);
+    ignoreSubClassFieldsClasses = Collections.unmodifiableSet(ignoreSubClasses);
+    filters = Collections.unmodifiableList(allFilters);
+    coderList = Collections.unmodifiableList(coders);
+    equalsWrapper = Collections.unmodifiableList(wrappers);
+  }
+
+  /**
+   * Create an immutable snapshot of the option with the settings of parents flattened. As it never changes, its cached
+   * plans and lookups are built only once and never discarded, so it can be shared by threads without synchronization,
+   * once it's published safely, e.g. with a final or volatile field. Mutation methods of the snapshot throw
+   * UnsupportedOperationException. Note, jsonOption is shared with this option, it shouldn't be changed.
+   */
+  public JSONCoderOption freeze() { return frozen ? this : new JSONCoderOption(this, true); }
   public static JSONCoderOption of() { return new JSONCoderOption(); }
   public static JSONCoderOption ofIndentFactor(int factor) {
     return new JSONCoderOption().setJsonOption(TDJSONOption.ofIndentFactor(factor));
   }
   
-  ICoder<?> findCoder(Class<?> cls){
+  /** Get the cached encode / decode plan for the java bean class */
+  public ClassCodecPlan getCodecPlan(Class<?> cls) { return getCaches().plans.get(cls); }
+
+  private Caches getCaches() {
+    Caches cache = caches;
+    long mc = frozen ? 0 : chainModCount();  // Frozen option doesn't depend on other options
+    if (cache == null || cache.chainModCount != mc) {
+      cache = caches = new Caches(mc, new ClassValue<ClassCodecPlan>() {
+        @Override protected ClassCodecPlan computeValue(Class<?> type) { return ClassCodecPlan.of(type, JSONCoderOption.this); }
+      }, new ClassValue<ClassInfo>() {
+        @Override protected ClassInfo computeValue(Class<?> type) { return new ClassInfo(type, JSONCoderOption.this); }
+      });
+    }
+    return cache;
+  }
+
+  /** Sum of the modCount of this option and its parents, as modCount only increases, it changes if any is mutated */
+  private long chainModCount() {
+    long result = 0;
+    for (JSONCoderOption opt = this; opt != null; opt = opt.parent)
+      result += opt.modCount;
+    return result;
+  }
+
+  /**
+   * Should be called whenever the option is mutated to invalidate the cached plans and lookups. It's called by the
+   * setters, add methods and the collections returned by getters, but has to be called explicitly if an element of them
+   * is changed, e.g. properties of a filter.
+   */
+  public JSONCoderOption touch() {
+    checkMutable().modCount++;  // Not atomic, mutation is not expected to be concurrent
+    return this;
+  }
+
+  private JSONCoderOption checkMutable() {
+    if (frozen)
+      throw new UnsupportedOperationException("Frozen JSONCoderOption can't be changed");
+    return this;
+  }
+
+  public JSONCoderOption setMaxObjects(int maxObjects) { checkMutable().maxObjects = maxObjects; return this; }
+  public JSONCoderOption setMaxDepth(int maxDepth) { checkMutable().maxDepth = maxDepth; return this; }
+  public JSONCoderOption setMaxElementsPerNode(int maxElementsPerNode) { checkMutable().maxElementsPerNode = maxElementsPerNode; return this; }
+  public JSONCoderOption setShowEnumName(boolean showEnumName) { checkMutable().showEnumName = showEnumName; return this; }
+  public JSONCoderOption setShowType(boolean showType) { checkMutable().showType = showType; return this; }
+  public JSONCoderOption setDedupWithRef(boolean dedupWithRef) { checkMutable().dedupWithRef = dedupWithRef; return this; }
+  public JSONCoderOption setParsingDateFormat(String parsingDateFormat) { checkMutable().parsingDateFormat = parsingDateFormat; return this; }
+  public JSONCoderOption setDateFormat(String dateFormat) { checkMutable().dateFormat = dateFormat; return this; }
+  public JSONCoderOption setTimeZone(TimeZone timeZone) { checkMutable().timeZone = timeZone; return this; }
+  public JSONCoderOption setAlwaysMapKeyAsString(boolean alwaysMapKeyAsString) { checkMutable().alwaysMapKeyAsString = alwaysMapKeyAsString; return this; }
+  public JSONCoderOption setErrorOnUnknownProperty(boolean errorOnUnknownProperty) { checkMutable().errorOnUnknownProperty = errorOnUnknownProperty; return this; }
+  public JSONCoderOption setJsonOption(TDJSONOption jsonOption) { checkMutable().jsonOption = jsonOption; return this; }
+  public JSONCoderOption setWarnLogLevel(LogLevel warnLogLevel) { checkMutable().warnLogLevel = warnLogLevel; return this; }
+  public JSONCoderOption setAllowPolymorphicClasses(boolean allowPolymorphicClasses) { checkMutable().allowPolymorphicClasses = allowPolymorphicClasses; return this; }
+  public JSONCoderOption setMergeArray(boolean mergeArray) { checkMutable().mergeArray = mergeArray; return this; }
+  public JSONCoderOption setStrictOrder(boolean strictOrder) { checkMutable().strictOrder = strictOrder; return this; }
+
+  public JSONCoderOption setIgnoreReadOnly(boolean ignoreReadOnly) { checkMutable().ignoreReadOnly = ignoreReadOnly; return touch(); }
+  public JSONCoderOption setShowPrivateField(boolean showPrivateField) { checkMutable().showPrivateField = showPrivateField; return touch(); }
+  public JSONCoderOption setIgnoreSubClassFields(boolean ignoreSubClassFields) {
+    checkMutable().ignoreSubClassFields = ignoreSubClassFields;
+    return touch();
+  }
+
+  ICoder<?> findCoder(Class<?> cls) { return getCaches().classInfos.get(cls).coder; }
+  private ICoder<?> _findCoder(Class<?> cls){
     for (ICoder<?> bc : coderList){
       if(bc.getType().isAssignableFrom(cls))
         return bc;
     }
-    return parent == null ? null : parent.findCoder(cls);
+    return parent == null ? null : parent._findCoder(cls);
   }
   
-  public boolean isClassSkipped(Class<?> cls) {
+  public boolean isClassSkipped(Class<?> cls) { return getCaches().classInfos.get(cls).skipped; }
+  private boolean _isClassSkipped(Class<?> cls) {
     for (Class<?> skip : skippedClasses) {
       if (skip.isAssignableFrom(cls))
         return true;
@@ -205,7 +427,7 @@ public class JSONCoderOption {
         return true;
     }
     
-    return parent != null && parent.isClassSkipped(cls);
+    return parent != null && parent._isClassSkipped(cls);
   }
   
   public FieldInfo transformField(Class<?> cls, FieldInfo fieldInfo, BeanCoderContext ctx) {
@@ -219,6 +441,16 @@ public class JSONCoderOption {
     return parent == null ? fieldInfo : parent.transformField(cls, fieldInfo, ctx);
   }
 
+  /** @return The field transformers applied to the class in the same order as {@link #transformField} */
+  public List<FieldTransformer> getFieldTransformers(Class<?> cls) {
+    List<FieldTransformer> result = new ArrayList<>();
+    for (JSONCoderOption opt = this; opt != null; opt = opt.parent)
+      for (Pair<Class<?>, FieldTransformer> filter : opt.filters)
+        if (filter._1.isAssignableFrom(cls))
+          result.add(filter._2);
+    return result;
+  }
+
   public boolean isExcluded(Class<?> cls, String name, BeanCoderContext ctx) {
     for (Pair<Class<?>, FieldTransformer> filter : filters) {
       if (!filter._1.isAssignableFrom(cls))
@@ -231,10 +463,15 @@ public class JSONCoderOption {
 
   @SuppressWarnings({ "rawtypes", "unchecked" })
   Object getEqualsWrapper(Object obj) {
-    for(EqualsWrapper ew : equalsWrapper)
-      if(ew.getType().isAssignableFrom(obj.getClass()))
-        return ew.newWrapper(obj);
-    return parent == null ? obj : parent.getEqualsWrapper(obj);
+    EqualsWrapper ew = getCaches().classInfos.get(obj.getClass()).equalsWrapper;
+    return ew == null ? obj : ew.newWrapper(obj);
+  }
+
+  private EqualsWrapper<?> _findEqualsWrapper(Class<?> cls) {
+    for(EqualsWrapper<?> ew : equalsWrapper)
+      if(ew.getType().isAssignableFrom(cls))
+        return ew;
+    return parent == null ? null : parent._findEqualsWrapper(cls);
   }
   
   public Date parseDateFullback(String dateStr) throws ParseException {
@@ -251,14 +488,16 @@ public class JSONCoderOption {
     return parent.parseDateFullback(dateStr);
   }
   
+  public boolean isIgnoreSubClassFields(Class<?> cls) { return getCaches().classInfos.get(cls).ignoreSubClassFields; }
+
   @SuppressWarnings({ "rawtypes", "unchecked" })
-  public boolean isIgnoreSubClassFields(Class<?> cls){
+  private boolean _isIgnoreSubClassFields(Class<?> cls){
     if(ignoreSubClassFields)
       return true;
     for(Class iCls : ignoreSubClassFieldsClasses)
       if(iCls.isAssignableFrom(cls))
         return true;
-    return parent != null && parent.isIgnoreSubClassFields(cls);
+    return parent != null && parent._isIgnoreSubClassFields(cls);
   }
 
   public JSONCoderOption addDefaultFilter(FieldTransformer filter) {
@@ -272,15 +511,16 @@ public class JSONCoderOption {
   public JSONCoderOption addFilterFor(Class<?> cls, FieldTransformer filter, boolean last) {
     Pair<Class<?>, FieldTransformer> clsToFilter = Tuple.of(cls, filter);
     doIfElse(last, () -> filters.add(clsToFilter), () -> filters.add(0, clsToFilter));
-    return this;
+    return touch();
   }
 
   public JSONCoderOption addSkippedClasses(Class<?>... cls) {
     skippedClasses.addAll(Arrays.asList(cls));
-    return this;
+    return touch();
   }
 
   public JSONCoderOption addSkippedClasses(String... cls) {
+    checkMutable();  // Otherwise, the exception is logged as error of loading class
     for (String c : cls) {
       try {
         skippedClasses.add(ClassUtil.forName(c));
@@ -288,25 +528,26 @@ public class JSONCoderOption {
         log.error("addSkippedClasses: Error load class: " + c);
       }
     }
-    return this;
+    return touch();
   }
 
   public JSONCoderOption addSkippedPackages(String... pkgs) {
     skippedPackages.addAll(listOf(pkgs));
-    return this;
+    return touch();
   }
 
   public JSONCoderOption addIgnoreSubClassFieldsClasses(Class<?>... cls) {
     Collections.addAll(ignoreSubClassFieldsClasses, cls);
-    return this;
+    return touch();
   }
 
   public JSONCoderOption addCoder(ICoder<?>... codes) {
     coderList.addAll(Arrays.asList(codes));
-    return this;
+    return touch();
   }
 
   public JSONCoderOption setJsonOption(boolean alwaysQuoteName, char quoteChar, int indentFactor) {
+    checkMutable();
     jsonOption.setAlwaysQuoteName(alwaysQuoteName)
         .setQuoteChar(quoteChar)
         .setIndentFactor(indentFactor);
@@ -0,0 +1,89 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.jsoncoder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The path of the objects being encoded or decoded, used as a stack. Same as {@link java.util.Deque}, index 0 is the
+ * top of the stack, i.e. the latest pushed object.
+ *
+ * <p>Besides the array backed stack, it keeps the counts of the objects, so that {@link #contains(Object)} is O(1).
+ * Objects are compared by identity, except {@link EqualsWrapper} which is compared with equals() as it's created for
+ * each lookup. Null elements are allowed as placeholders, but they are never contained.
+ */
+public class ObjectPath {
+  private Object[] elements = new Object[16];
+  private int size;
+  private final Map<Object, Integer> objectCounts = new IdentityHashMap<>();
+  private final Map<Object, Integer> wrapperCounts = new HashMap<>();
+
+  /** If hashCode() or equals() of the obj throws, the exception is propagated and the path is not changed */
+  public void push(Object obj) {
+    if (obj != null)
+      counts(obj).merge(obj, 1, Integer::sum);
+    if (size == elements.length)
+      elements = Arrays.copyOf(elements, size * 2);
+    elements[size++] = obj;
+  }
+
+  public Object pop() {
+    if (size == 0)
+      throw new NoSuchElementException();
+    Object obj = elements[--size];
+    elements[size] = null;
+    if (obj != null)
+      counts(obj).computeIfPresent(obj, (k, c) -> c == 1 ? null : c - 1);
+    return obj;
+  }
+
+  /** @param index 0 is the top of the stack */
+  public Object get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("index=" + index + "; size=" + size);
+    return elements[size - 1 - index];
+  }
+
+  /** @return The bottom of the stack, i.e. the root object */
+  public Object getLast() {
+    if (size == 0)
+      throw new NoSuchElementException();
+    return elements[0];
+  }
+
+  public boolean contains(Object obj) { return obj != null && counts(obj).containsKey(obj); }
+
+  /** @return The index of the first occurrence from the top, compared the same way as {@link #contains}, -1 if not found */
+  public int indexOf(Object obj) {
+    if (!contains(obj))
+      return -1;
+    boolean isWrapper = obj instanceof EqualsWrapper;
+    for (int i = size - 1; i >= 0; i--)
+      if (obj == elements[i] || isWrapper && obj.equals(elements[i]))
+        return size - 1 - i;
+    return -1;
+  }
+
+  public int size() { return size; }
+  public boolean isEmpty() { return size == 0; }
+
+  public void clear() {
+    Arrays.fill(elements, 0, size, null);
+    size = 0;
+    objectCounts.clear();
+    wrapperCounts.clear();
+  }
+
+  private Map<Object, Integer> counts(Object obj) { return obj instanceof EqualsWrapper ? wrapperCounts : objectCounts; }
+}
@@ -0,0 +1,140 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.jsoncoder.coder;
+
+import lombok.Getter;
+import org.jsonex.core.util.BeanProperty;
+import org.jsonex.core.util.ClassUtil;
+import org.jsonex.core.util.StringUtil;
+import org.jsonex.jsoncoder.BeanCoderContext;
+import org.jsonex.jsoncoder.JSONCoderOption;
+import org.jsonex.jsoncoder.fieldTransformer.FieldTransformer;
+import org.jsonex.jsoncoder.fieldTransformer.FieldTransformer.FieldInfo;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.*;
+
+/**
+ * Immutable, pre-resolved encode / decode information of a java bean class for a given {@link JSONCoderOption}, so that
+ * {@link CoderObject} doesn't need to check the property attributes and walk through the option chain for each object.
+ *
+ * <p>It's built once per (class, option) and cached by {@link JSONCoderOption#getCodecPlan(Class)}. The cache is
+ * discarded whenever an option in the chain is mutated.
+ */
+public class ClassCodecPlan {
+  @Getter final Class<?> cls;
+  /** Properties to be encoded in the encoding order, with excluded, transient and un-readable properties removed */
+  @Getter final PropertyPlan[] encodeProperties;
+  /** All the properties by name used for decoding */
+  final Map<String, PropertyPlan> decodeProperties;
+  /** Field transformers that apply to this class and are not static, they are evaluated for each object */
+  final FieldTransformer[] transformers;
+
+  public static class PropertyPlan {
+    @Getter final BeanProperty property;
+    @Getter final String name;
+    final Type genericType;
+    final boolean isTypeVariable;
+    /** Static or transient property which won't be decoded */
+    @Getter final boolean ignoredForDecode;
+    /** Property is mutable for decode */
+    @Getter final boolean immutable;
+    /**
+     * Decode into existing property value instead of create new one. Exclude non-container types to prevent side
+     * effect of getter methods, e.g. calculated values
+     */
+    @Getter final boolean decodeToExisting;
+
+    PropertyPlan(BeanProperty prop) {
+      property = prop;
+      name = prop.getName();
+      genericType = prop.getGenericType();
+      isTypeVariable = genericType instanceof TypeVariable;
+      Class<?> type = prop.getType();
+      ignoredForDecode = Modifier.isStatic(prop.getModifier()) || prop.isTransient();
+      immutable = prop.isImmutable(true);
+      decodeToExisting = prop.isReadable(true)
+          && !ClassUtil.isSimpleType(type)
+          && !Enum.class.isAssignableFrom(type)
+          && !Date.class.isAssignableFrom(type);
+    }
+
+    /** Same as {@link BeanProperty#getActualGenericType(Type)}, but only resolve when it's a TypeVariable */
+    public Type getActualGenericType(Type clsType) {
+      return isTypeVariable ? ClassUtil.getActualTypeOfTypeVariable((TypeVariable<?>) genericType, clsType) : genericType;
+    }
+
+    public Object get(Object obj) { return property.get(obj); }
+    public void set(Object obj, Object value) { property.set(obj, value); }
+  }
+
+  ClassCodecPlan(Class<?> cls, JSONCoderOption opt) {
+    this.cls = cls;
+    // Plan is shared cross encodings, so it's built with a context without any encoding state
+    BeanCoderContext ctx = new BeanCoderContext(opt);
+    boolean allowPrivate = opt.isShowPrivateField();
+    List<FieldTransformer> staticFilters = new ArrayList<>();
+    List<FieldTransformer> trans = new ArrayList<>();
+    for (FieldTransformer t : opt.getFieldTransformers(cls))
+      (t.isStatic() ? staticFilters : trans).add(t);
+
+    List<PropertyPlan> encodeProps = new ArrayList<>();
+    Map<String, PropertyPlan> decodeProps = new HashMap<>();
+    for (BeanProperty pd : ClassUtil.getProperties(cls).values()) {
+      PropertyPlan pp = new PropertyPlan(pd);
+      decodeProps.put(pp.name, pp);
+
+      if (!pd.isReadable(allowPrivate))
+        continue;
+
+      if (pd.isImmutable(allowPrivate) && opt.isIgnoreReadOnly())
+        continue;  // Only mutable attribute will be encoded
+
+      if (pd.isTransient())
+        continue;
+
+      if (isExcluded(staticFilters, pd.getName(), ctx))
+        continue;
+      encodeProps.add(pp);
+    }
+    encodeProperties = encodeProps.toArray(new PropertyPlan[0]);
+    decodeProperties = decodeProps;
+    transformers = trans.toArray(new FieldTransformer[0]);
+  }
+
+  public static ClassCodecPlan of(Class<?> cls, JSONCoderOption opt) { return new ClassCodecPlan(cls, opt); }
+
+  /** Find the property for decode, certain serializers don't follow java bean naming convention and capitalize the name */
+  public PropertyPlan getDecodeProperty(String name) {
+    PropertyPlan result = decodeProperties.get(name);
+    return result != null ? result : decodeProperties.get(StringUtil.lowerFirst(name));
+  }
+
+  public boolean hasTransformers() { return transformers.length > 0; }
+
+  /** Equivalent of {@link JSONCoderOption#isExcluded} for the filters not evaluated when the plan is built */
+  public boolean isExcluded(String name, BeanCoderContext ctx) { return isExcluded(Arrays.asList(transformers), name, ctx); }
+
+  /** Equivalent of {@link JSONCoderOption#transformField} with non-applicable and static transformers removed */
+  public FieldInfo transformField(FieldInfo fieldInfo, BeanCoderContext ctx) {
+    for (FieldTransformer t : transformers)
+      fieldInfo = t.apply(fieldInfo, ctx);
+    return fieldInfo;
+  }
+
+  private static boolean isExcluded(List<FieldTransformer> filters, String name, BeanCoderContext ctx) {
+    for (FieldTransformer f : filters)
+      if (!f.shouldInclude(name, ctx))
+        return true;
+    return false;
+  }
+}
@@ -15,9 +15,14 @@ import org.jsonex.jsoncoder.BeanCoderContext;
 import org.jsonex.jsoncoder.BeanCoderException;
 import org.jsonex.jsoncoder.ICoder;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONPullParser.Token;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.jsonex.core.util.StringUtil.toTrimmedStr;
 
@@ -36,6 +41,15 @@ public class CoderArray implements ICoder<Object> {
     return target;
   }
 
+  /** Streaming version of {@link #encode} */
+  public void write(Object obj, Type type, BeanCoderContext ctx, TDJSONStreamWriter out) {
+    out.startArray();
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    for (int i = 0; i < Array.getLength(obj) && i < ctx.getOption().getMaxElementsPerNode(); i++)
+      ctx.writeOrNull(Array.get(obj, i), cls.getComponentType(), out);
+    out.endArray();
+  }
+
   @Override
   public Object decode(TDNode tdNode, Type type, Object targetObj, BeanCoderContext ctx) {
     if (tdNode.getType() != TDNode.Type.ARRAY)
@@ -59,4 +73,27 @@ public class CoderArray implements ICoder<Object> {
           ctx.decode(tdNode.getChild(i), cls.getComponentType(), null, Integer.toString(i)));
     return result;
   }
-}
\ No newline at end of file
+
+  /**
+   * Streaming version of {@link #decode(TDNode, Type, Object, BeanCoderContext)}, the current token is START_ARRAY. As the
+   * length is unknown, the array is created after all the elements are decoded.
+   */
+  public Object decode(TDJSONPullParser parser, Type type, Object targetObj, BeanCoderContext ctx) {
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    ctx.getObjectPath().push(null);  // Placeholder, the array is not available until all elements are decoded
+    List<Object> elements = new ArrayList<>();
+    for (int i = 0; parser.next() != Token.END_ARRAY; i++)
+      elements.add(ctx.decode(parser, cls.getComponentType(), null, Integer.toString(i)));
+
+    int startIdx = 0;
+    if (targetObj != null && ctx.getOption().isMergeArray())
+      startIdx = Array.getLength(targetObj);
+
+    Object result = Array.newInstance(cls.getComponentType(), startIdx + elements.size());
+    if (startIdx != 0)
+      System.arraycopy(targetObj, 0, result, 0, startIdx);
+    for (int i = 0; i < elements.size(); i++)
+      Array.set(result, startIdx + i, elements.get(i));
+    return result;
+  }
+}
@@ -15,6 +15,9 @@ import org.jsonex.jsoncoder.BeanCoderContext;
 import org.jsonex.jsoncoder.BeanCoderException;
 import org.jsonex.jsoncoder.ICoder;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONPullParser.Token;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 import lombok.SneakyThrows;
 
 import java.lang.reflect.Modifier;
@@ -31,17 +34,8 @@ public class CoderCollection implements ICoder<Collection> {
 
   @Override public TDNode encode(Collection obj, Type type, BeanCoderContext ctx, TDNode target) {
     target.setType(TDNode.Type.ARRAY);
-    if (ctx.getOption().isStrictOrder()
-        && obj instanceof Set && !(obj instanceof SortedSet || obj instanceof LinkedHashSet || obj instanceof EnumSet)) {
-      Set set = new TreeSet(FullbackComparator.it); // Due to instability of Set iteration order, we copy it to TreeSet to make iteration stable
-      set.addAll(obj);
-      obj = set;
-    }
-
-    Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
-    Type childType = null;
-    if (actualTypeParameters != null)
-      childType = actualTypeParameters[0];
+    obj = toOrdered(obj, ctx);
+    Type childType = getChildType(type);
 
     try {
       int i = 0;
@@ -57,6 +51,40 @@ public class CoderCollection implements ICoder<Collection> {
     return target;
   }
 
+  /** Streaming version of {@link #encode} */
+  public void write(Collection obj, Type type, BeanCoderContext ctx, TDJSONStreamWriter out) {
+    out.startArray();
+    obj = toOrdered(obj, ctx);
+    Type childType = getChildType(type);
+
+    try {
+      int i = 0;
+      for (Object o1 : (Collection<?>) obj) {
+        ctx.writeOrNull(o1, childType, out);
+        if (i++ > ctx.getOption().getMaxElementsPerNode())
+          break;
+      }
+    } catch(ConcurrentModificationException e) {
+      // Ignore, some collection will be changed during serialization, such as class loader
+    }
+    out.endArray();
+  }
+
+  private static Collection toOrdered(Collection obj, BeanCoderContext ctx) {
+    if (ctx.getOption().isStrictOrder()
+        && obj instanceof Set && !(obj instanceof SortedSet || obj instanceof LinkedHashSet || obj instanceof EnumSet)) {
+      Set set = new TreeSet(FullbackComparator.it); // Due to instability of Set iteration order, we copy it to TreeSet to make iteration stable
+      set.addAll(obj);
+      obj = set;
+    }
+    return obj;
+  }
+
+  private static Type getChildType(Type type) {
+    Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
+    return actualTypeParameters == null ? null : actualTypeParameters[0];
+  }
+
   @SuppressWarnings("unchecked")
   @SneakyThrows
   @Override public Collection decode(TDNode tdNode, Type type, Object targetObj, BeanCoderContext ctx) {
@@ -64,12 +92,37 @@ public class CoderCollection implements ICoder<Collection> {
       throw new BeanCoderException("Incorrect input, the input has to be an array:" + toTrimmedStr(tdNode, 500));
 
     Class<?> cls = ClassUtil.getGenericClass(type);
+    Type childType = getDecodeChildType(type, cls);
+    Collection<Object> result = newResult(cls, childType, targetObj, ctx);
+    ctx.getNodeToObjectMap().put(tdNode, result);
 
+    for (int i = 0; i < tdNode.getChildrenSize(); i++)
+      result.add(ctx.decode(tdNode.getChildren().get(i), childType, null, Integer.toString(i)));
+    return result;
+  }
+
+  /** Streaming version of {@link #decode(TDNode, Type, Object, BeanCoderContext)}, the current token is START_ARRAY */
+  public Collection decode(TDJSONPullParser parser, Type type, Object targetObj, BeanCoderContext ctx) {
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    Type childType = getDecodeChildType(type, cls);
+    Collection<Object> result = newResult(cls, childType, targetObj, ctx);
+    ctx.getObjectPath().push(result);
+
+    for (int i = 0; parser.next() != Token.END_ARRAY; i++)
+      result.add(ctx.decode(parser, childType, null, Integer.toString(i)));
+    return result;
+  }
+
+  private static Type getDecodeChildType(Type type, Class<?> cls) {
     Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
     if (actualTypeParameters == null)
       throw new BeanCoderException("For collection type, you have to specify the actual type: " + cls);
-    Type childType = actualTypeParameters[0];
+    return actualTypeParameters[0];
+  }
 
+  @SuppressWarnings("unchecked")
+  @SneakyThrows
+  private static Collection<Object> newResult(Class<?> cls, Type childType, Object targetObj, BeanCoderContext ctx) {
     Collection<Object> result = (Collection<Object>) targetObj;
     if (result == null) {
       int modifier = cls.getModifiers();
@@ -88,11 +141,6 @@ public class CoderCollection implements ICoder<Collection> {
       if (!ctx.getOption().isMergeArray())
         result.clear();
     }
-
-    ctx.getNodeToObjectMap().put(tdNode, result);
-
-    for (int i = 0; i < tdNode.getChildrenSize(); i++)
-      result.add(ctx.decode(tdNode.getChildren().get(i), childType, null, Integer.toString(i)));
     return result;
   }
 }
\ No newline at end of file
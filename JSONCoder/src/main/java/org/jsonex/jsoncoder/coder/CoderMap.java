@@ -12,11 +12,15 @@ package org.jsonex.jsoncoder.coder;
 import org.jsonex.core.factory.InjectableInstance;
 import org.jsonex.core.util.BeanConvertContext;
 import org.jsonex.core.util.ClassUtil;
+import org.jsonex.jsoncoder.BeanCoder;
 import org.jsonex.jsoncoder.BeanCoderContext;
 import org.jsonex.jsoncoder.BeanCoderException;
 import org.jsonex.jsoncoder.ICoder;
-import org.jsonex.jsoncoder.JSONCoderOption;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.TreeDoc;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONPullParser.Token;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 import org.jsonex.treedoc.json.TDJSONWriter;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -37,15 +41,7 @@ public class CoderMap implements ICoder<Map> {
   @Override public Class<Map> getType() { return Map.class; }
 
   @Override public TDNode encode(Map obj, Type type, BeanCoderContext ctx, TDNode target) {
-    JSONCoderOption opt = ctx.getOption();
-
-    Map<?,?> map = (Map<?,?>)obj;
-    if (opt.isStrictOrder()
-        && !(map instanceof SortedMap) && ! (map instanceof LinkedHashMap) && ! (map instanceof EnumMap)) {
-      TreeMap treeMap = new TreeMap<>(FullbackComparator.it);  // Due to instability of map iterator, we copy it to TreeMap to make it in stable order.
-      treeMap.putAll(map);
-      map = treeMap;
-    }
+    Map<?,?> map = toOrdered(obj, ctx);
 
     Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
 
@@ -56,11 +52,7 @@ public class CoderMap implements ICoder<Map> {
       childValueType = actualTypeParameters[1];
     }
 
-    Class<?> childKeyCls = ClassUtil.getGenericClass(childKeyType);
-    if (childKeyCls == null)
-      childKeyCls = Object.class;
-    if (isSimpleType(childKeyCls) || Enum.class.isAssignableFrom(childKeyCls) || childKeyCls == Object.class
-        || opt.isAlwaysMapKeyAsString()) {
+    if (isKeyAsString(childKeyType, ctx)) {
       target.setType(TDNode.Type.MAP);
       // Handle it as Map and put the key as String key
       int i = 0;
@@ -92,29 +84,56 @@ public class CoderMap implements ICoder<Map> {
     return target;
   }
 
+  /**
+   * Streaming version of {@link #encode}. Map with complex key type is rare, it's encoded as TDNode and written as a
+   * whole.
+   */
+  public void write(Map obj, Type type, BeanCoderContext ctx, TDJSONStreamWriter out) {
+    Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
+    Type childKeyType = actualTypeParameters == null ? null : actualTypeParameters[0];
+    if (!isKeyAsString(childKeyType, ctx)) {
+      out.node(encode(obj, type, ctx, new TreeDoc().getRoot()));
+      return;
+    }
+
+    Type childValueType = actualTypeParameters == null ? null : actualTypeParameters[1];
+    out.startMap();
+    int i = 0;
+    for (Map.Entry<?, ?> entry : toOrdered(obj, ctx).entrySet()) {
+      ctx.writeOrNull(entry.getValue(), childValueType, out.key(String.valueOf(entry.getKey())));
+      if (i++ > ctx.getOption().getMaxElementsPerNode())
+        break;
+    }
+    out.endMap();
+  }
+
+  private static Map<?,?> toOrdered(Map<?,?> map, BeanCoderContext ctx) {
+    if (ctx.getOption().isStrictOrder()
+        && !(map instanceof SortedMap) && ! (map instanceof LinkedHashMap) && ! (map instanceof EnumMap)) {
+      TreeMap treeMap = new TreeMap<>(FullbackComparator.it);  // Due to instability of map iterator, we copy it to TreeMap to make it in stable order.
+      treeMap.putAll(map);
+      map = treeMap;
+    }
+    return map;
+  }
+
+  private static boolean isKeyAsString(Type childKeyType, BeanCoderContext ctx) {
+    Class<?> childKeyCls = ClassUtil.getGenericClass(childKeyType);
+    if (childKeyCls == null)
+      childKeyCls = Object.class;
+    return isSimpleType(childKeyCls) || Enum.class.isAssignableFrom(childKeyCls) || childKeyCls == Object.class
+        || ctx.getOption().isAlwaysMapKeyAsString();
+  }
+
   @SuppressWarnings("unchecked")
   @SneakyThrows
   @Override public Map decode(TDNode tdNode, Type type, Object targetObj, BeanCoderContext ctx) {
     Class<?> cls = ClassUtil.getGenericClass(type);
-    // Get the key/value types
-    // TODO: call ClassUtil.getGenericTypeActualParamsForInterface() instead to support MultiValueMap
-    Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
-    if(actualTypeParameters == null)
-      throw new BeanCoderException("BeanCoder: For Map type, you have to specify the actual key, value type: " + cls);
+    Type[] actualTypeParameters = getActualTypeParameters(type, cls);
     Type childKeyType = actualTypeParameters[0];
     Type childValueType = actualTypeParameters[1];
 
-    //Instantiate the object
-    Map<Object,Object> result = (Map<Object,Object>)targetObj;
-    if (result == null) {
-      int modifier = cls.getModifiers();
-      if (Modifier.isAbstract(modifier) || Modifier.isInterface(modifier)) {
-        //Use the default implementation HashMap
-        result = new LinkedHashMap<>();
-      } else
-        result = (Map<Object,Object>) cls.newInstance();
-    }
-
+    Map<Object,Object> result = newResult(cls, targetObj);
     ctx.getNodeToObjectMap().put(tdNode, result);
 
     switch (tdNode.getType()) {
@@ -138,4 +157,48 @@ public class CoderMap implements ICoder<Map> {
     throw new BeanCoderException("Incorrect input, the input for type:" + cls + " has to be an array or map, got"
         + toTrimmedStr(TDJSONWriter.get().writeAsString(tdNode), 500));
   }
+
+  /** Streaming version of {@link #decode(TDNode, Type, Object, BeanCoderContext)}, the current token is the first KEY or END_MAP */
+  public Object decode(TDJSONPullParser parser, Type type, Object targetObj, BeanCoderContext ctx) {
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    Type[] actualTypeParameters = getActualTypeParameters(type, cls);
+    Class<?> childKeyCls = ClassUtil.getGenericClass(actualTypeParameters[0]);
+    Type childValueType = actualTypeParameters[1];
+
+    Map<Object,Object> result = newResult(cls, targetObj);
+    ctx.getObjectPath().push(result);
+
+    for (int i = 0; parser.getToken() == Token.KEY; parser.next(), i++) {
+      Object key = ClassUtil.toSimpleObject(parser.getKey(), childKeyCls, new BeanConvertContext());
+      parser.next();
+      if (TDNode.REF_KEY.equals(key) && parser.getValue() instanceof String) {  // Out of order $ref
+        ctx.getObjectPath().pop();
+        return BeanCoder.resolveRef(parser, ctx);
+      }
+      if (TDNode.ID_KEY.equals(key) && parser.getToken() == Token.VALUE && parser.getValue() != null)
+        ctx.getIdToObjectMap().put(parser.getValue().toString(), result);
+      Object value = ctx.decode(parser, childValueType, result.get(key), i + ".value");
+      result.put(key, value);
+    }
+    return result;
+  }
+
+  private static Type[] getActualTypeParameters(Type type, Class<?> cls) {
+    // TODO: call ClassUtil.getGenericTypeActualParamsForInterface() instead to support MultiValueMap
+    Type[] actualTypeParameters = ClassUtil.getGenericTypeActualParams(type);
+    if(actualTypeParameters == null)
+      throw new BeanCoderException("BeanCoder: For Map type, you have to specify the actual key, value type: " + cls);
+    return actualTypeParameters;
+  }
+
+  @SuppressWarnings("unchecked")
+  @SneakyThrows
+  private static Map<Object,Object> newResult(Class<?> cls, Object targetObj) {
+    if (targetObj != null)
+      return (Map<Object,Object>)targetObj;
+    int modifier = cls.getModifiers();
+    if (Modifier.isAbstract(modifier) || Modifier.isInterface(modifier))
+      return new LinkedHashMap<>();  //Use the default implementation HashMap
+    return (Map<Object,Object>) cls.newInstance();
+  }
 }
\ No newline at end of file
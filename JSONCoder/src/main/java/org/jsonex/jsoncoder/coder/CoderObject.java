@@ -12,23 +12,27 @@ package org.jsonex.jsoncoder.coder;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.jsonex.core.factory.InjectableInstance;
-import org.jsonex.core.util.BeanProperty;
 import org.jsonex.core.util.ClassUtil;
 import org.jsonex.core.util.StringUtil;
+import org.jsonex.jsoncoder.BeanCoder;
 import org.jsonex.jsoncoder.BeanCoderContext;
 import org.jsonex.jsoncoder.BeanCoderException;
 import org.jsonex.jsoncoder.ICoder;
 import org.jsonex.jsoncoder.JSONCoderOption;
+import org.jsonex.jsoncoder.coder.ClassCodecPlan.PropertyPlan;
 import org.jsonex.jsoncoder.fieldTransformer.FieldTransformer.FieldInfo;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.TreeDoc;
+import org.jsonex.treedoc.json.TDJSONPullParser;
+import org.jsonex.treedoc.json.TDJSONPullParser.Token;
+import org.jsonex.treedoc.json.TDJSONStreamWriter;
 import org.jsonex.treedoc.json.TDJSONWriter;
 
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
-import java.util.Date;
-import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -55,32 +59,25 @@ public class CoderObject implements ICoder<Object> {
     if (opt.isShowType() || cls != obj.getClass())
       target.createChild(TYPE_KEY).setValue(obj.getClass().getName());
 
-    Map<String, BeanProperty> pds = ClassUtil.getProperties(cls);
-    for (BeanProperty pd : pds.values()) {
-      if (!pd.isReadable(opt.isShowPrivateField()))
-        continue;
-
-      if (pd.isImmutable(opt.isShowPrivateField()) && opt.isIgnoreReadOnly())
-        continue;  // Only mutable attribute will be encoded
-
-      if (pd.isTransient())
-        continue;
-
-      if (opt.isExcluded(cls, pd.getName(), ctx))
-        continue;
-
+    ClassCodecPlan plan = opt.getCodecPlan(cls);
+    for (PropertyPlan pp : plan.getEncodeProperties()) {
       // V3DAL will cause Lazy load exception, we have to catch it
       try {
-        FieldInfo fieldInfo = new FieldInfo(pd.getName(), pd.getActualGenericType(type), pd.get(obj));
-        fieldInfo = opt.transformField(cls, fieldInfo, ctx);
-
-        if (fieldInfo.getName() == null)  // Skipped
+        if (plan.hasTransformers() && plan.isExcluded(pp.getName(), ctx))
           continue;
-
-        if (fieldInfo.getObj() != null) {
-          Type fieldType =  getIfInstanceOf(fieldInfo.getType(), TypeVariable.class,
+        Type fieldType = pp.getActualGenericType(type);
+        Object fieldObj = pp.get(obj);
+        if (plan.hasTransformers()) {
+          FieldInfo fieldInfo = plan.transformField(new FieldInfo(pp.getName(), fieldType, fieldObj), ctx);
+          if (fieldInfo.getName() == null)  // Skipped
+            continue;
+          fieldObj = fieldInfo.getObj();
+          fieldType = getIfInstanceOf(fieldInfo.getType(), TypeVariable.class,
               t -> ClassUtil.getActualTypeOfTypeVariable(t, type), Function.identity());
-          TDNode cn = ctx.encode(fieldInfo.getObj(), fieldType, target.createChild(pd.getName()));
+        }
+
+        if (fieldObj != null) {
+          TDNode cn = ctx.encode(fieldObj, fieldType, target.createChild(pp.getName()));
           if (cn.getType() == TDNode.Type.SIMPLE && cn.getValue() == null)
             removeLast(target.getChildren());
         }
@@ -92,6 +89,48 @@ public class CoderObject implements ICoder<Object> {
     return target;
   }
 
+  /** Streaming version of {@link #encode}. Property with nothing written (e.g. null) is omitted as in encode() */
+  public void write(Object obj, Type type, BeanCoderContext ctx, TDJSONStreamWriter out) {
+    out.startMap();
+    JSONCoderOption opt = ctx.getOption();
+
+    Class<?> cls = obj.getClass();  // Use the real object;
+    if (opt.isIgnoreSubClassFields(cls) && type != null)
+      cls = ClassUtil.getGenericClass(type);
+
+    if (opt.isShowType() || cls != obj.getClass())
+      out.key(TYPE_KEY).value(obj.getClass().getName());
+
+    ClassCodecPlan plan = opt.getCodecPlan(cls);
+    int depth = out.getDepth();
+    for (PropertyPlan pp : plan.getEncodeProperties()) {
+      try {
+        String name = pp.getName();
+        if (plan.hasTransformers() && plan.isExcluded(name, ctx))
+          continue;
+        Type fieldType = pp.getActualGenericType(type);
+        Object fieldObj = pp.get(obj);
+        if (plan.hasTransformers()) {
+          FieldInfo fieldInfo = plan.transformField(new FieldInfo(name, fieldType, fieldObj), ctx);
+          if (fieldInfo.getName() == null)  // Skipped
+            continue;
+          fieldObj = fieldInfo.getObj();
+          fieldType = getIfInstanceOf(fieldInfo.getType(), TypeVariable.class,
+              t -> ClassUtil.getActualTypeOfTypeVariable(t, type), Function.identity());
+        }
+
+        if (fieldObj != null)
+          ctx.write(fieldObj, fieldType, out.key(name));
+      } catch (UncheckedIOException e) {
+        throw e;
+      } catch(Throwable e) {
+        opt.getWarnLogLevel().log(log, "warning during encoding", e);
+        out.closeTo(depth);  // Keep the output well-formed, the partial value is kept the same as encode()
+      }
+    }
+    out.endMap();
+  }
+
   @Override @SneakyThrows
   public Object decode(TDNode tdNode, Type type, Object targetObj, BeanCoderContext ctx) {
     Class<?> cls = ClassUtil.getGenericClass(type);
@@ -106,54 +145,30 @@ public class CoderObject implements ICoder<Object> {
     }
 
     Object subType = tdNode.getChildValue(TYPE_KEY);
-    if (subType instanceof String) {
-      if (!ctx.getOption().isAllowPolymorphicClasses())
-        throw new BeanCoderException(
-            "allowPolymorphicClasses is not enabled in option while there's $type attributes: " + subType);
-      try {
-        Class<?> loadedClass = Class.forName((String) subType);
-        if (!cls.isAssignableFrom(loadedClass)) {
-          throw new BeanCoderException(
-              "Specified class:" + loadedClass.getName() + " is incompatible to destination class:" + cls.getName());
-        }
-        cls = loadedClass;
-      } catch(ClassNotFoundException e) {
-        throw new BeanCoderException("Incorrect $type:" + subType, e);
-      }
-    }
+    if (subType instanceof String)
+      cls = loadSubType(cls, (String) subType, ctx);
 
     // TODO: confirm the test case
     if (cls.isAssignableFrom(TDNode.class))
       return tdNode;
 
-    Object result = targetObj;
-    if (result == null) {
-      Constructor cstr = cls.getDeclaredConstructor();
-      cstr.setAccessible(true);
-      result = cstr.newInstance();
-    }
-
+    Object result = targetObj != null ? targetObj : newInstance(cls);
     ctx.getNodeToObjectMap().put(tdNode, result);
 
-    Map<String, BeanProperty> pds = ClassUtil.getProperties(cls);
-
     JSONCoderOption opt = ctx.getOption();
     if (tdNode.getChildren() == null)
       return result;  // Empty object
 
+    ClassCodecPlan plan = opt.getCodecPlan(cls);
     for (TDNode nc : tdNode.getChildren()) {
-      BeanProperty prop = pds.get(nc.getKey());
-      if (prop == null)  // Certain serializer does not follow java bean naming convention, the attribute name is capitalized
-        prop = pds.get(StringUtil.lowerFirst(nc.getKey()));
-
+      PropertyPlan prop = plan.getDecodeProperty(nc.getKey());
       if (prop == null) {
         if(opt.isErrorOnUnknownProperty())
           throw new BeanCoderException("No such attribute:" + nc.getKey() + ",class:" + cls);
         continue;
       }
 
-      int mod = prop.getModifier();
-      if (Modifier.isStatic(mod) || prop.isTransient()) {
+      if (prop.isIgnoredForDecode()) {
         if (opt.isErrorOnUnknownProperty())
           throw new BeanCoderException("Field is static or transient:" + nc.getKey() + ",class:" + cls);
         continue;  // None public, or static, transient
@@ -161,10 +176,7 @@ public class CoderObject implements ICoder<Object> {
 
       Object childTargetObj = null;
 
-      if (prop.isReadable(true)
-          && !ClassUtil.isSimpleType(prop.getType())
-          && !Enum.class.isAssignableFrom(prop.getType())
-          && !Date.class.isAssignableFrom(prop.getType()))
+      if (prop.isDecodeToExisting())
         // TODO: Exclude more non-container and java bean types to prevent side effect when calling getter method
         // One example of the site effect for getter method is calculated value for example: calculate hash code
         try {
@@ -173,7 +185,7 @@ public class CoderObject implements ICoder<Object> {
           // ignore if calling get throws exception
         }
 
-      if (childTargetObj == null && prop.isImmutable(true)) {  // In that case, the attribute has to be mutable.
+      if (childTargetObj == null && prop.isImmutable()) {  // In that case, the attribute has to be mutable.
         if(opt.isErrorOnUnknownProperty())
           throw new BeanCoderException("Field is not mutable:" + nc.getKey() + ",class:" + cls);
         continue;
@@ -186,4 +198,134 @@ public class CoderObject implements ICoder<Object> {
     }
     return result;
   }
-}
\ No newline at end of file
+
+  /**
+   * Streaming version of {@link #decode(TDNode, Type, Object, BeanCoderContext)}, the current token is the first KEY of
+   * the map or END_MAP. If polymorphic classes are allowed and the class is not final, the actual class is unknown until
+   * "$type" is read, so the properties before "$type" are read as TDNode and decoded with the TDNode version. If there's
+   * no "$type", the whole map is decoded with the TDNode version, which costs about the same as decoding from TDNode.
+   */
+  @SneakyThrows
+  public Object decode(TDJSONPullParser parser, Type type, Object targetObj, BeanCoderContext ctx) {
+    Class<?> cls = ClassUtil.getGenericClass(type);
+    JSONCoderOption opt = ctx.getOption();
+
+    TDNode buffered = null;
+    if (opt.isAllowPolymorphicClasses() && !Modifier.isFinal(cls.getModifiers())) {
+      for (; parser.getToken() == Token.KEY && !TYPE_KEY.equals(parser.getKey()); parser.next()) {
+        if (buffered == null)
+          buffered = new TreeDoc().getRoot().setType(TDNode.Type.MAP);
+        TDNode cn = parser.readNode(buffered.createChild(parser.getKey()));
+        if (TDNode.REF_KEY.equals(cn.getKey()) && cn.getValue() instanceof String)
+          return BeanCoder.resolveRef(parser, ctx);
+      }
+      if (buffered != null && parser.getToken() != Token.KEY)  // No $type
+        return decode(buffered, type, targetObj, ctx);
+    }
+
+    if (parser.getToken() == Token.KEY && TYPE_KEY.equals(parser.getKey())) {
+      parser.next();
+      if (parser.getValue() instanceof String)
+        cls = loadSubType(cls, (String) parser.getValue(), ctx);
+      parser.skip();
+      if (opt.isErrorOnUnknownProperty() && opt.getCodecPlan(cls).getDecodeProperty(TYPE_KEY) == null)
+        throw new BeanCoderException("No such attribute:" + TYPE_KEY + ",class:" + cls);
+      parser.next();
+    }
+
+    Object result = targetObj != null ? targetObj : newInstance(cls);
+    ctx.getObjectPath().push(result);
+    if (buffered != null) {  // Properties before $type
+      decode(buffered, cls == ClassUtil.getGenericClass(type) ? type : cls, result, ctx);
+      Object id = buffered.getChildValue(TDNode.ID_KEY);
+      if (id != null)
+        ctx.getIdToObjectMap().put(id.toString(), result);
+    }
+
+    ClassCodecPlan plan = opt.getCodecPlan(cls);
+    for (; parser.getToken() == Token.KEY; parser.next()) {
+      String key = parser.getKey();
+      boolean valueConsumed = false;
+      if ((TYPE_KEY.equals(key) || TDNode.ID_KEY.equals(key) || TDNode.REF_KEY.equals(key))) {
+        parser.next();
+        if (TDNode.REF_KEY.equals(key) && parser.getValue() instanceof String) {  // Out of order $ref
+          ctx.getObjectPath().pop();
+          return BeanCoder.resolveRef(parser, ctx);
+        }
+        if (TYPE_KEY.equals(key) && parser.getValue() instanceof String)
+          loadSubType(cls, (String) parser.getValue(), ctx);  // Out of order $type, it will throw as polymorphic isn't allowed
+        if (TDNode.ID_KEY.equals(key) && parser.getValue() != null)
+          ctx.getIdToObjectMap().put(parser.getValue().toString(), result);
+        parser.skip();
+        valueConsumed = true;
+      }
+
+      PropertyPlan prop = plan.getDecodeProperty(key);
+      if (prop == null) {
+        if(opt.isErrorOnUnknownProperty())
+          throw new BeanCoderException("No such attribute:" + key + ",class:" + cls);
+        skipValue(parser, valueConsumed);
+        continue;
+      }
+
+      if (prop.isIgnoredForDecode()) {
+        if (opt.isErrorOnUnknownProperty())
+          throw new BeanCoderException("Field is static or transient:" + key + ",class:" + cls);
+        skipValue(parser, valueConsumed);
+        continue;  // None public, or static, transient
+      }
+
+      Object childTargetObj = null;
+      if (prop.isDecodeToExisting())
+        try {
+          childTargetObj = prop.get(result);
+        } catch (Exception e) {
+          // ignore if calling get throws exception
+        }
+
+      if (childTargetObj == null && prop.isImmutable()) {  // In that case, the attribute has to be mutable.
+        if(opt.isErrorOnUnknownProperty())
+          throw new BeanCoderException("Field is not mutable:" + key + ",class:" + cls);
+        skipValue(parser, valueConsumed);
+        continue;
+      }
+
+      if (valueConsumed)  // $type or $id that happens to be a property
+        continue;
+      parser.next();
+      Type childType = prop.getActualGenericType(type);
+      Object child = ctx.decode(parser, childType, childTargetObj, key);
+      if (!Objects.equals(childTargetObj, child))
+        prop.set(result, child);
+    }
+    return result;
+  }
+
+  private static void skipValue(TDJSONPullParser parser, boolean valueConsumed) {
+    if (!valueConsumed)
+      parser.skip();
+  }
+
+  private static Class<?> loadSubType(Class<?> cls, String subType, BeanCoderContext ctx) {
+    if (!ctx.getOption().isAllowPolymorphicClasses())
+      throw new BeanCoderException(
+          "allowPolymorphicClasses is not enabled in option while there's $type attributes: " + subType);
+    try {
+      Class<?> loadedClass = Class.forName(subType);
+      if (!cls.isAssignableFrom(loadedClass)) {
+        throw new BeanCoderException(
+            "Specified class:" + loadedClass.getName() + " is incompatible to destination class:" + cls.getName());
+      }
+      return loadedClass;
+    } catch(ClassNotFoundException e) {
+      throw new BeanCoderException("Incorrect $type:" + subType, e);
+    }
+  }
+
+  @SneakyThrows
+  private static Object newInstance(Class<?> cls) {
+    Constructor<?> cstr = cls.getDeclaredConstructor();
+    cstr.setAccessible(true);
+    return cstr.newInstance();
+  }
+}
@@ -29,6 +29,13 @@ public interface FieldTransformer extends BiFunction<FieldInfo, BeanCoderContext
   default boolean shouldInclude(String name, BeanCoderContext ctx) { return true; }
   default FieldInfo apply(FieldInfo fieldInfo, BeanCoderContext beanCoderContext) { return fieldInfo; }
 
+  /**
+   * Opt-in for static filter: shouldInclude() only depends on the name and apply() doesn't change the field. Static
+   * filter is evaluated only once per class when the {@link org.jsonex.jsoncoder.coder.ClassCodecPlan} is built,
+   * otherwise it's evaluated for each field of each object. It should be fully configured before added to the option.
+   */
+  default boolean isStatic() { return false; }
+
   // Factory methods
   static SimpleFilter exclude(String... props) { return SimpleFilter.of().addProperties(props); }
   static SimpleFilter include(String... props) { return SimpleFilter.of(true).addProperties(props); }
@@ -40,4 +40,7 @@ public class SimpleFilter implements FieldTransformer {
   public boolean shouldInclude(String name, BeanCoderContext beanCoderContext) {
     return isInclude() ? properties.contains(name) : !properties.contains(name);
   }
+
+  /** Properties shouldn't be changed once it's added to the option, otherwise, call JSONCoderOption.touch() */
+  @Override public boolean isStatic() { return getClass() == SimpleFilter.class; }
 }
\ No newline at end of file
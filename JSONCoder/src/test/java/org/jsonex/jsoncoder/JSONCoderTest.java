@@ -9,11 +9,21 @@
 
 package org.jsonex.jsoncoder;
 
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.jsonex.core.charsource.ParseRuntimeException;
 import org.jsonex.core.util.FileUtil;
 import org.jsonex.core.util.MapBuilder;
+import org.jsonex.core.util.StringUtil;
+import org.jsonex.jsoncoder.coder.ClassCodecPlan;
+import org.jsonex.jsoncoder.coder.CoderDate;
+import org.jsonex.jsoncoder.fieldTransformer.FieldTransformer;
 import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.json.TDJSONOption;
+import org.jsonex.treedoc.json.TDJSONParser;
+import org.jsonex.treedoc.json.TDJSONWriter;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -21,12 +31,15 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.xml.datatype.DatatypeFactory;
+import java.io.ByteArrayOutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -186,6 +199,179 @@ public class JSONCoderTest {
     assertTrue(str.indexOf("readonly") < 0);
   }
 
+  @Test public void testCodecPlanCache() {
+    JSONCoderOption opt = JSONCoderOption.of();
+    ClassCodecPlan plan = opt.getCodecPlan(TestBean2.class);
+    assertSame(plan, opt.getCodecPlan(TestBean2.class));
+    assertTrue(toJSONString(buildTestBean(), opt).contains("strField"));
+
+    opt.addFilterFor(TestBean2.class, exclude("strField"));
+    assertNotSame("Plan should be rebuilt after option mutated", plan, opt.getCodecPlan(TestBean2.class));
+    assertFalse(toJSONString(new TestBean2().setStrField("str1"), opt).contains("strField"));
+  }
+
+  @Test public void testDynamicFilter() {
+    AtomicBoolean hide = new AtomicBoolean();
+    JSONCoderOption opt = JSONCoderOption.of().addFilterFor(TestBean2.class, new FieldTransformer() {
+      @Override public boolean shouldInclude(String name, BeanCoderContext ctx) {
+        return !(hide.get() && name.equals("strField"));
+      }
+    });
+    assertTrue("Filter is not static by default", toJSONString(new TestBean2().setStrField("str1"), opt).contains("strField"));
+    hide.set(true);
+    assertFalse(toJSONString(new TestBean2().setStrField("str1"), opt).contains("strField"));
+    assertTrue(exclude("strField").isStatic());
+  }
+
+  @Test public void testClassLookupCache() {
+    JSONCoderOption opt = JSONCoderOption.of();
+    assertSame(CoderDate.get(), opt.findCoder(java.sql.Date.class));  // Inherited from global
+    assertFalse(opt.isClassSkipped(TestBean2.class));
+    assertFalse(opt.isIgnoreSubClassFields(TestBean2.class));
+
+    opt.addSkippedClasses(TestBean2.class).setIgnoreSubClassFields(true);
+    assertTrue(opt.isClassSkipped(TestBean2.class));
+    assertTrue(opt.isIgnoreSubClassFields(TestBean2.class));
+    assertFalse(JSONCoderOption.global.isClassSkipped(TestBean2.class));
+
+    ClassCodecPlan globalPlan = JSONCoderOption.global.getCodecPlan(TestBean2.class);
+    ClassCodecPlan plan = opt.getCodecPlan(TestBean2.class);
+    JSONCoderOption.of().setIgnoreReadOnly(true);
+    assertSame("Not affected by unrelated option", globalPlan, JSONCoderOption.global.getCodecPlan(TestBean2.class));
+    assertSame(plan, opt.getCodecPlan(TestBean2.class));
+    JSONCoderOption.global.touch();
+    assertNotSame("Rebuilt if parent is changed", plan, opt.getCodecPlan(TestBean2.class));
+
+    opt = JSONCoderOption.of();
+    assertFalse(opt.isClassSkipped(TestBean2.class));
+    opt.getSkippedClasses().add(TestBean2.class);  // Collections returned by getters invalidate the caches
+    assertTrue(opt.isClassSkipped(TestBean2.class));
+    opt.getSkippedClasses().removeIf(cls -> cls == TestBean2.class);
+    assertFalse(opt.isClassSkipped(TestBean2.class));
+    opt.getCoderList().add(0, CoderDate.get());
+    assertSame(CoderDate.get(), opt.findCoder(java.util.Date.class));
+    opt.getCoderList().clear();
+    assertTrue(opt.getCoderList().isEmpty());
+  }
+
+  @Test public void testFreezeOption() {
+    JSONCoderOption opt = JSONCoderOption.of().addSkippedClasses(NoneComparable.class).setShowType(true);
+    JSONCoderOption frozen = opt.freeze();
+    assertTrue(frozen.isFrozen());
+    assertSame(frozen, frozen.freeze());
+    assertTrue(frozen.isShowType());
+    assertTrue(frozen.isClassSkipped(NoneComparable.class));
+    assertTrue(frozen.isClassSkipped(SimpleDateFormat.class));  // Flattened from global
+    assertSame(CoderDate.get(), frozen.findCoder(java.sql.Date.class));
+    assertEquals(toJSONString(buildTestBean(), opt), toJSONString(buildTestBean(), frozen));
+
+    ClassCodecPlan plan = frozen.getCodecPlan(TestBean2.class);
+    JSONCoderOption.of().addSkippedClasses(TestBean2.class);
+    assertSame("Frozen option is not affected by other options", plan, frozen.getCodecPlan(TestBean2.class));
+
+    try {
+      frozen.setShowType(false);
+      fail("Should throw exception");
+    } catch (UnsupportedOperationException e) {
+      assertEquals("Frozen JSONCoderOption can't be changed", e.getMessage());
+    }
+    try {
+      frozen.getCoderList().add(CoderDate.get());
+      fail("Should throw exception");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+
+    List<Runnable> setters = listOf(
+        () -> frozen.setIgnoreReadOnly(true),
+        () -> frozen.setShowPrivateField(true),
+        () -> frozen.setIgnoreSubClassFields(true),
+        () -> frozen.addSkippedClasses(TestBean2.class.getName()));
+    for (Runnable setter : setters) {
+      try {
+        setter.run();
+        fail("Should throw exception");
+      } catch (UnsupportedOperationException e) {
+        assertEquals("Frozen JSONCoderOption can't be changed", e.getMessage());
+      }
+    }
+    assertFalse("Field is unchanged after rejected set", frozen.isIgnoreReadOnly());
+    assertFalse(frozen.isShowPrivateField());
+    assertFalse(frozen.isIgnoreSubClassFields());
+    assertFalse(frozen.isClassSkipped(TestBean2.class));
+  }
+
+  @Test public void testContextPool() {
+    JSONCoderOption opt = JSONCoderOption.of();
+    BeanCoderContext ctx = BeanCoderContext.acquire(opt);
+    assertSame(opt, ctx.getOption());
+    BeanCoderContext ctx1 = BeanCoderContext.acquire(opt);
+    assertNotSame("Context in use shouldn't be returned", ctx, ctx1);
+    ctx1.release();
+
+    ctx.getObjectPath().push("obj");
+    ctx.release();
+    assertTrue(ctx.getObjectPath().isEmpty());
+    assertSame(ctx, BeanCoderContext.acquire(opt));
+    assertEquals(1, ctx.getNextId());
+    ctx.release();
+
+    // The pooled context is reset between calls
+    assertEquals(toJSONString(buildTestBean(), opt), toJSONString(buildTestBean(), opt));
+  }
+
+  public static class EqualsAll {
+    @Getter @Setter EqualsAll child;
+    @Override public boolean equals(Object o) { return true; }
+    @Override public int hashCode() { return 0; }
+  }
+
+  @Test public void testCyclicRefByIdentity() {
+    EqualsAll obj = new EqualsAll();
+    obj.setChild(new EqualsAll());
+    obj.getChild().setChild(obj);
+    String expected = "{child:{child:{$ref:'../../'}}}";
+    assertEquals(expected, toJSONString(obj, JSONCoderOption.of().setJsonOption(false, '\'', 0)));
+    assertEquals(expected, TDJSONWriter.get().writeAsString(BeanCoder.get().encode(obj),
+        new TDJSONOption().setAlwaysQuoteName(false).setQuoteChar('\'')));
+  }
+
+  @Test public void testObjectPath() {
+    ObjectPath path = new ObjectPath();
+    String s1 = "str";
+    String s2 = new String(s1);
+    path.push(s1);
+    path.push(null);
+    path.push(2);
+    assertEquals(3, path.size());
+    assertEquals(2, path.get(0));
+    assertEquals(s1, path.getLast());
+    assertEquals(2, path.indexOf(s1));
+    assertEquals(-1, path.indexOf(s2));
+    assertTrue(path.contains(s1));
+    assertFalse("Compared by identity", path.contains(s2));
+    assertFalse(path.contains(null));
+
+    assertEquals(2, path.pop());
+    path.pop();
+    assertSame(s1, path.pop());
+    assertFalse(path.contains(s1));
+    assertTrue(path.isEmpty());
+
+    EqualsWrapper<String> badWrapper = new EqualsWrapper<String>() {
+      @Override public Class<String> getType() { return String.class; }
+      @Override public EqualsWrapper<String> newWrapper(String obj) { return this; }
+      @Override public String getObject() { return s1; }
+      @Override public int hashCode() { throw new ClassCastException("Bad wrapper"); }
+    };
+    try {
+      path.push(badWrapper);
+      fail("Should throw ClassCastException");
+    } catch (ClassCastException e) {
+      assertTrue("Path is unchanged if push fails", path.isEmpty());
+    }
+  }
+
   @SneakyThrows
   @Test public void testDumpOnlyOptions() {
     // Set following attributes will make it's for dump only, can't be parse back to original class
@@ -226,6 +412,13 @@ public class JSONCoderTest {
     TestBean obj1 = JSONCoder.global.decode(str2, TestBean.class);
     assertEquals(1, obj1.getIntField());
 
+    // Streaming decode with properties before and after $type
+    str1 = "{intField:1, $type:'org.jsonex.jsoncoder.TestBean', publicStrField:'str'}";
+    obj = (TestBean)JSONCoder.global.decode(str1, BaseTestBean.class, opt);
+    assertEquals(1, obj.getIntField());
+    assertEquals("str", obj.publicStrField);
+    assertEquals(2, JSONCoder.global.decode("{intField:2}", TestBean.class, opt).getIntField());  // No $type
+
     // Invalid class
     str1 = "{intField:1, $type:'InvalidClass'}";
     expectDecodeWithException(str1, Object.class, opt, "Incorrect $type:InvalidClass");
@@ -461,6 +654,71 @@ public class JSONCoderTest {
     log("str=" + str);
     assertTrue("Encode to writer should succeed", sWriter.toString().contains("intField"));
   }
+  @Test public void testEncodeToOutputStream() {
+    TestBean bean = new TestBean().setStrField("\u4e2d\u6587 \ud83d\ude00");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JSONCoder.global.encode(bean, out);
+    assertEquals(JSONCoder.global.encode(bean), new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+
+  @Test public void testStreamingEncodeSameAsTree() {
+    TestBean tb = buildTestBean();
+    tb.getBean2().setObjs(new Object[]{"objstr1", null, new Date(1111) });
+    List<JSONCoderOption> opts = listOf(
+        JSONCoderOption.of(),
+        JSONCoderOption.ofIndentFactor(2),
+        JSONCoderOption.ofIndentFactor(2).setShowType(true).setIgnoreSubClassFields(true).setStrictOrder(true),
+        new JSONCoderOption().setJsonOption(false, '`', 4).setMaxElementsPerNode(1).setMaxDepth(2),
+        JSONCoderOption.of().addFilterFor(TestBean2.class, mask("strField")));
+    for (JSONCoderOption opt : opts) {
+      TDNode node = BeanCoder.get().encode(tb, new BeanCoderContext(opt), null);
+      String expected = TDJSONWriter.get().writeAsString(node, opt.getJsonOption());
+      assertEquals(expected, toJSONString(tb, opt));
+    }
+  }
+
+  @Test public void testStreamingDecodeSameAsTree() {
+    TestBean tb = buildTestBean();
+    tb.bean2List = Arrays.asList(tb.getBean2(), tb.getBean2());
+    JSONCoderOption opt = JSONCoderOption.ofIndentFactor(2);
+    for (String str : listOf(
+        toJSONString(tb, opt),
+        toJSONString(tb, JSONCoderOption.of().setDedupWithRef(true)),
+        "{intField:1, $id:'a', bean2:{testBean:{$ref:'#a'}}, ints:[1,2], bean2List:[{$ref:'/bean2'}]}")) {
+      TestBean tbStream = JSONCoder.global.decode(str, TestBean.class);
+      TestBean tbTree = JSONCoder.global.decode(DecodeReq.of(TestBean.class).setTdNode(TDJSONParser.get().parse(str)));
+      assertEquals(toJSONString(tbTree, opt), toJSONString(tbStream, opt));
+    }
+
+    TestBean tb1 = JSONCoder.global.decode(
+        "{intField:1, $id:'a', bean2:{testBean:{$ref:'#a'}}, bean2List:[{$ref:'../../bean2'}]}", TestBean.class);
+    assertSame(tb1, tb1.getBean2().testBean);
+    assertSame(tb1.getBean2(), tb1.bean2List.get(0));
+  }
+
+  @Test public void testStreamingDecodeRefs() {
+    EqualsAll obj = JSONCoder.global.decode("{x:'x', child:{x:'y', $ref:'../'}}", EqualsAll.class);
+    assertSame("$ref is not the first key", obj, obj.getChild());
+    obj = JSONCoder.global.decode("{x:'x', child:{x:'y', $ref:'../'}}", EqualsAll.class,
+        JSONCoderOption.of().setAllowPolymorphicClasses(true));
+    assertSame("Properties before $type are buffered", obj, obj.getChild());
+
+    obj = JSONCoder.global.decode("{child:{child:{$ref:'/'}}}", EqualsAll.class);
+    assertSame("Root reference", obj, obj.getChild().getChild());
+
+    Map<String, Map<String, Object>> map =
+        JSONCoder.global.decode(new DecodeReq<Map<String, Map<String, Object>>>(){}.setJson("{m:{x:1, $ref:'/'}}"));
+    assertSame(map, map.get("m"));
+
+    String str = "[{$ref:'#1'}, {x:'x', $id:1}]";  // Forward reference
+    List<EqualsAll> list = JSONCoder.global.decode(new DecodeReq<List<EqualsAll>>(){}.setJson(str));
+    List<EqualsAll> listTree =
+        JSONCoder.global.decode(new DecodeReq<List<EqualsAll>>(){}.setTdNode(TDJSONParser.get().parse(str)));
+    assertNull(listTree.get(0));
+    assertNull(list.get(0));
+    assertNotNull(list.get(1));
+  }
 
   @Test public void testDecodeJsonex() {
     Reader in = FileUtil.loadResource(this.getClass(), "jsonex.json");
@@ -504,6 +762,21 @@ public class JSONCoderTest {
     assertMatchesSnapshot("map", JSONCoder.encode(map, JSONCoderOption.of().setStrictOrder(true)));
   }
 
+  @Test public void testDecodeMaxDepth() {
+    String json = StringUtil.appendRepeatedly(new StringBuilder(), 200000, "{child:").toString();
+    JSONCoderOption opt = JSONCoderOption.of();
+    opt.getJsonOption().setMaxDepth(100);
+    try {
+      JSONCoder.decode(json, EqualsAll.class, opt);
+      fail("Should fail for too deep document");
+    } catch (BeanCoderException e) {
+      Throwable cause = e;
+      while (!(cause instanceof ParseRuntimeException) && cause.getCause() != null)
+        cause = cause.getCause();
+      assertTrue(cause.getMessage(), cause.getMessage().startsWith("Exceeded max depth 100"));
+    }
+  }
+
   private void expectDecodeWithException(String str, Class<?> cls, String expectedError) {
     expectDecodeWithException(str, cls, JSONCoderOption.global, expectedError);
   }
@@ -0,0 +1,48 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. It accepts the same arguments as the standard JMH main class, but defaults the
+ * result to JSON format in file "jmh-result.json" so that results can be compared release over release, e.g.:
+ * <pre>
+ *   mvn package -pl benchmark -am -DskipTests
+ *   java -jar benchmark/target/benchmarks.jar TreeDocBenchmark -p size=LARGE
+ * </pre>
+ */
+public class BenchmarkMain {
+  public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmdOpt = new CommandLineOptions(args);
+    if (cmdOpt.shouldHelp()) {
+      cmdOpt.showHelp();
+      return;
+    }
+
+    ChainedOptionsBuilder opt = new OptionsBuilder().parent(cmdOpt);
+    if (!cmdOpt.getResultFormat().hasValue())
+      opt.resultFormat(ResultFormatType.JSON);
+    if (!cmdOpt.getResult().hasValue())
+      opt.result(DEFAULT_RESULT_FILE);
+
+    Runner runner = new Runner(opt.build());
+    if (cmdOpt.shouldList())
+      runner.list();
+    else
+      runner.run();
+  }
+}
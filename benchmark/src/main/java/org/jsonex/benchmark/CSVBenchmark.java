@@ -0,0 +1,30 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.benchmark;
+
+import org.jsonex.csv.CSVParser;
+import org.jsonex.treedoc.TDNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks for {@link CSVParser} */
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2) @Fork(1)
+@State(Scope.Benchmark)
+public class CSVBenchmark {
+  @Param({"SMALL", "MEDIUM", "LARGE"}) Payloads.Size size;
+
+  String csv;
+
+  @Setup public void setup() { csv = Payloads.csv(size); }
+
+  @Benchmark public TDNode parse() { return CSVParser.get().parse(csv); }
+}
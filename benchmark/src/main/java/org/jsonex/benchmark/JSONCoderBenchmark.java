@@ -0,0 +1,66 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.benchmark;
+
+import org.jsonex.benchmark.Payloads.Order;
+import org.jsonex.jsoncoder.BeanCoder;
+import org.jsonex.jsoncoder.BeanCoderContext;
+import org.jsonex.jsoncoder.DecodeReq;
+import org.jsonex.jsoncoder.JSONCoder;
+import org.jsonex.jsoncoder.JSONCoderOption;
+import org.jsonex.treedoc.TDNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks for {@link BeanCoder} (object &lt;-&gt; TDNode) and {@link JSONCoder} (object &lt;-&gt; JSON text) */
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2) @Fork(1)
+@State(Scope.Benchmark)
+public class JSONCoderBenchmark {
+  @Param({"SMALL", "MEDIUM", "LARGE"}) Payloads.Size size;
+
+  final JSONCoderOption opt = Payloads.newCoderOption();
+  /** Without $type in the payload, the beans are read as TDNode before decoding, as subclasses are allowed */
+  final JSONCoderOption polymorphicOpt = Payloads.newCoderOption().setAllowPolymorphicClasses(true);
+  final Type type = new DecodeReq<List<Order>>(){}.getType();
+
+  List<Order> orders;
+  String json;
+  TDNode node;
+
+  @Setup public void setup() {
+    orders = Payloads.orders(size);
+    json = JSONCoder.encode(orders, opt);
+    node = BeanCoder.get().encode(orders, new BeanCoderContext(opt), type);
+  }
+
+  @Benchmark public TDNode beanCoderEncode() {
+    return BeanCoder.get().encode(orders, new BeanCoderContext(opt), type);
+  }
+
+  @Benchmark public Object beanCoderDecode() {
+    return BeanCoder.get().decode(node, type, null, "", new BeanCoderContext(opt));
+  }
+
+  @Benchmark public String jsonCoderEncode() {
+    return JSONCoder.encode(orders, opt);
+  }
+
+  @Benchmark public List<Order> jsonCoderDecode() {
+    return JSONCoder.decode(DecodeReq.<List<Order>>of(type).setJson(json), opt);
+  }
+
+  @Benchmark public List<Order> jsonCoderDecodePolymorphic() {
+    return JSONCoder.decode(DecodeReq.<List<Order>>of(type).setJson(json), polymorphicOpt);
+  }
+}
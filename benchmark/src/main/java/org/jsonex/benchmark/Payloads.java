@@ -0,0 +1,116 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.benchmark;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.jsonex.jsoncoder.JSONCoder;
+import org.jsonex.jsoncoder.JSONCoderOption;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic payloads shared by the benchmarks. The same seed always generates the same document so results are
+ * comparable release over release.
+ */
+public class Payloads {
+  /** Payload sizes used as JMH {@code @Param} values */
+  public enum Size {
+    SMALL(1),         // ~0.5KB
+    MEDIUM(100),      // ~50KB
+    LARGE(10_000);    // ~5MB
+
+    public final int records;
+    Size(int records) { this.records = records; }
+  }
+
+  @Data @Accessors(chain = true)
+  public static class Address {
+    String streetLine;
+    String city;
+    String country;
+    int zip;
+  }
+
+  @Data @Accessors(chain = true)
+  public static class Item {
+    long itemId;
+    String title;
+    double price;
+    int quantity;
+  }
+
+  @Data @Accessors(chain = true)
+  public static class Order {
+    long orderId;
+    String buyer;
+    boolean paid;
+    Date createdAt;
+    Address shipTo;
+    List<Item> items = new ArrayList<>();
+    Map<String, String> attributes = new LinkedHashMap<>();
+  }
+
+  /** Option without trimming, so that the LARGE payload is fully encoded */
+  public static JSONCoderOption newCoderOption() {
+    return new JSONCoderOption()
+        .setMaxObjects(Integer.MAX_VALUE)
+        .setMaxElementsPerNode(Integer.MAX_VALUE);
+  }
+
+  public static List<Order> orders(Size size) {
+    List<Order> result = new ArrayList<>(size.records);
+    for (int i = 0; i < size.records; i++)
+      result.add(order(i));
+    return result;
+  }
+
+  static Order order(int i) {
+    Order order = new Order()
+        .setOrderId(1_000_000L + i)
+        .setBuyer("buyer_" + i + " \"quoted\"")
+        .setPaid(i % 3 != 0)
+        .setCreatedAt(new Date(1_500_000_000_000L + i * 1000L))
+        .setShipTo(new Address()
+            .setStreetLine(i + " Main St\nApt " + (i % 50))
+            .setCity("San Jose")
+            .setCountry("US")
+            .setZip(95000 + i % 100));
+    for (int j = 0; j < 3; j++) {
+      order.items.add(new Item()
+          .setItemId(i * 10L + j)
+          .setTitle("Item title " + j + " of order " + i)
+          .setPrice(9.99 + j)
+          .setQuantity(j + 1));
+    }
+    order.attributes.put("channel", i % 2 == 0 ? "web" : "mobile");
+    order.attributes.put("coupon", "C" + (i % 7));
+    return order;
+  }
+
+  public static String json(Size size) { return JSONCoder.encode(orders(size), newCoderOption()); }
+
+  public static String csv(Size size) {
+    StringBuilder sb = new StringBuilder("orderId,buyer,paid,city,zip,total\n");
+    for (int i = 0; i < size.records * 10; i++) {
+      sb.append(1_000_000L + i).append(',')
+          .append("\"buyer_").append(i).append(", \"\"quoted\"\"\"").append(',')
+          .append(i % 3 != 0).append(',')
+          .append("San Jose").append(',')
+          .append(95000 + i % 100).append(',')
+          .append(i * 1.5).append('\n');
+    }
+    return sb.toString();
+  }
+}
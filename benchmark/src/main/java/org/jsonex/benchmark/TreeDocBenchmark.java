@@ -0,0 +1,54 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.benchmark;
+
+import org.jsonex.core.charsource.ArrayCharSource;
+import org.jsonex.core.charsource.ReaderCharSource;
+import org.jsonex.treedoc.TDNode;
+import org.jsonex.treedoc.json.TDJSONOption;
+import org.jsonex.treedoc.json.TDJSONParser;
+import org.jsonex.treedoc.json.TDJSONWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks for {@link TDJSONParser} and {@link TDJSONWriter} */
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2) @Fork(1)
+@State(Scope.Benchmark)
+public class TreeDocBenchmark {
+  @Param({"SMALL", "MEDIUM", "LARGE"}) Payloads.Size size;
+
+  String json;
+  TDNode node;
+  TDJSONOption indentOpt = TDJSONOption.ofIndentFactor(2);
+
+  @Setup public void setup() {
+    json = Payloads.json(size);
+    node = TDJSONParser.get().parse(json);
+  }
+
+  @Benchmark public TDNode parseArrayCharSource() {
+    return TDJSONParser.get().parse(new ArrayCharSource(json));
+  }
+
+  @Benchmark public TDNode parseReaderCharSource() {
+    return TDJSONParser.get().parse(new ReaderCharSource(new StringReader(json)));
+  }
+
+  @Benchmark public String write() {
+    return TDJSONWriter.get().writeAsString(node);
+  }
+
+  @Benchmark public String writeIndented() {
+    return TDJSONWriter.get().writeAsString(node, indentOpt);
+  }
+}
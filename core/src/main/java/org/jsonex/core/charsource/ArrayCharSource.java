@@ -9,32 +9,43 @@
 
 package org.jsonex.core.charsource;
 
-import lombok.RequiredArgsConstructor;
+import org.jsonex.core.type.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Predicate;
 
-@RequiredArgsConstructor
 public class ArrayCharSource extends CharSource {
   final char[] buf;
   final int startIndex;
   final int endIndex;
+  /** Index of the char at bookmark pos 0, it's different from startIndex if the bookmark doesn't start from 0 */
+  private int base;
+  private final CharLookup.FirstCharsCache strStartsCache = new CharLookup.FirstCharsCache();
 
+  public ArrayCharSource(char[] buf, int startIndex, int endIndex) {
+    this.buf = buf;
+    this.startIndex = startIndex;
+    this.endIndex = endIndex;
+    this.base = startIndex;
+  }
   public ArrayCharSource(char[] buff) { this(buff, 0, buff.length); }
   public ArrayCharSource(String str) { this(str.toCharArray(), 0, str.length()); }
 
   @Override public char read() {
     if (isEof(0))
       throw new EOFRuntimeException();
-    return bookmark.append(buf[startIndex + bookmark.getPos()]);
+    return bookmark.append(buf[base + bookmark.getPos()]);
   }
 
   @Override public char peek(int i) {
     if (isEof(i))
       throw new EOFRuntimeException();
-    return buf[startIndex + bookmark.getPos() + i];
+    return buf[base + bookmark.getPos() + i];
   }
 
-  @Override public boolean isEof(int i) { return startIndex + bookmark.getPos() + i >= endIndex; }
+  @Override public boolean isEof(int i) { return base + bookmark.getPos() + i >= endIndex; }
 
   @Override public boolean readUntil(Predicate<CharSource> predicate, StringBuilder target, int minLen, int maxLen) {
     int startPos = bookmark.getPos();
@@ -47,7 +58,71 @@ public class ArrayCharSource extends CharSource {
       read();
     }
     if (target != null)
-      target.append(buf, startIndex + startPos, len);
+      target.append(buf, base + startPos, len);
     return matched;
   }
+
+  @Override public CharSource setBookmarkBase(Bookmark bookmarkBase) {
+    base = base + bookmark.getPos() - bookmarkBase.getPos();
+    return super.setBookmarkBase(bookmarkBase);
+  }
+
+  @Override public List<CharSource> splitLines(int chunkSize) {
+    List<CharSource> result = new ArrayList<>();
+    for (int start = base + bookmark.getPos(); start < endIndex; ) {
+      int end = endIndex - start <= chunkSize ? endIndex : start + chunkSize;
+      while (end < endIndex && buf[end - 1] != '\n')
+        end++;
+      result.add(new ArrayCharSource(buf, start, end));
+      start = end;
+    }
+    return result;
+  }
+
+  /**
+   * Fast path for char set terminators. It scans the buffer directly with a lookup table and updates the bookmark once
+   * for the whole span instead of calling the predicate and read() for each char.
+   */
+  @Override public boolean readUntil(String chars, @Nullable Collection<String> strs, StringBuilder target, boolean include, int minLen, int maxLen) {
+    CharLookup terms = CharLookup.of(chars);
+    CharLookup strStarts = strStartsCache.get(strs);
+    int begin = base + bookmark.getPos();
+    int end = endIndex - begin > maxLen ? begin + maxLen : endIndex;
+    int lines = 0;
+    int lineStart = begin;
+    boolean matched = false;
+    int i = begin;
+    for (; i < end; i++) {
+      char c = buf[i];
+      if (i - begin >= minLen
+          && (terms.contains(c) || strStarts != null && strStarts.contains(c) && startsWithAny(strs, i)) == include) {
+        matched = true;
+        break;
+      }
+      if (c == '\n') {
+        lines++;
+        lineStart = i + 1;
+      }
+    }
+    bookmark.append(i - begin, lines, i - lineStart);
+    if (target != null)
+      target.append(buf, begin, i - begin);
+    return matched;
+  }
+
+  private boolean startsWithAny(Collection<String> strs, int index) {
+    for (String s : strs)
+      if (startsWith(s, index))
+        return true;
+    return false;
+  }
+
+  private boolean startsWith(String str, int index) {
+    if (index + str.length() > endIndex)
+      return false;
+    for (int i = 0; i < str.length(); i++)
+      if (buf[index + i] != str.charAt(i))
+        return false;
+    return true;
+  }
 }
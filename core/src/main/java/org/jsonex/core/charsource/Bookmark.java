@@ -32,6 +32,25 @@ public class Bookmark implements Cloneable {
     return c;
   }
 
+  /**
+   * Same as calling {@link #append(char)} for len chars, which contains the given number of line breaks, the last line
+   * break is followed by colAfterLastLine chars. Used for bulk read to avoid updating for each char
+   */
+  void append(int len, int lines, int colAfterLastLine) {
+    pos += len;
+    if (lines > 0) {
+      line += lines;
+      col = colAfterLastLine;
+    } else
+      col += len;
+  }
+
+  /** Append the span of a bookmark that is relative to this one, e.g. the end bookmark of a chunk read separately */
+  public Bookmark append(Bookmark span) {
+    append(span.pos, span.line, span.col);
+    return this;
+  }
+
   @Override public Bookmark clone() throws CloneNotSupportedException {
     return (Bookmark)super.clone();
   }
@@ -0,0 +1,241 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.charsource;
+
+import lombok.SneakyThrows;
+import org.jsonex.core.type.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * CharSource over UTF-8 encoded bytes in a {@link ByteBuffer}, e.g. a {@link java.nio.MappedByteBuffer} of a file. Bytes
+ * are read with absolute index without copying, ASCII bytes are used as chars directly and only multi-byte sequences
+ * are decoded. Supplementary characters are returned as surrogate pairs, malformed sequences are returned as U+FFFD.
+ *
+ * <p>The position and limit of the buffer are not changed.
+ */
+public class ByteBufferCharSource extends CharSource {
+  private final static char REPLACEMENT_CHAR = '\uFFFD';
+
+  final ByteBuffer buf;
+  final int endIndex;
+  /** Byte index of current char */
+  private int index;
+  /** If current char is the low surrogate of the supplementary char at current index */
+  private boolean lowSurrogate;
+  /** Byte length of the last decoded sequence */
+  private int seqLen;
+  private final CharLookup.FirstCharsCache strStartsCache = new CharLookup.FirstCharsCache();
+
+  public ByteBufferCharSource(ByteBuffer buf) { this(buf, buf.position(), buf.limit()); }
+  public ByteBufferCharSource(ByteBuffer buf, int startIndex, int endIndex) {
+    this.buf = buf;
+    this.index = startIndex;
+    this.endIndex = endIndex;
+  }
+  public ByteBufferCharSource(byte[] bytes) { this(ByteBuffer.wrap(bytes)); }
+
+  /**
+   * Map the file into memory as read only. The mapping is released when the buffer is garbage collected. As the buffer
+   * is indexed by int, the file size is limited to 2GB
+   *
+   * @throws IllegalArgumentException if the file is larger than 2GB
+   */
+  @SneakyThrows
+  public static ByteBufferCharSource ofFile(Path path) {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = ch.size();
+      if (size > Integer.MAX_VALUE)
+        throw new IllegalArgumentException("File larger than 2GB can't be mapped: path=" + path + "; size=" + size);
+      return new ByteBufferCharSource(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+  }
+
+  @Override public char read() {
+    if (index >= endIndex)
+      throw new EOFRuntimeException();
+    byte b = buf.get(index);
+    if (b >= 0) {
+      index++;
+      return bookmark.append((char) b);
+    }
+    char c = toChar(decode(index), lowSurrogate);
+    advance();
+    return bookmark.append(c);
+  }
+
+  @Override public char peek(int i) {
+    if (i == 0 && index < endIndex) {
+      byte b = buf.get(index);
+      if (b >= 0)
+        return (char) b;
+    }
+    int savedIndex = index;
+    boolean savedLow = lowSurrogate;
+    int savedSeqLen = seqLen;
+    try {
+      skipChars(i);
+      if (index >= endIndex)
+        throw new EOFRuntimeException();
+      byte b = buf.get(index);
+      return b >= 0 ? (char) b : toChar(decode(index), lowSurrogate);
+    } finally {
+      index = savedIndex;
+      lowSurrogate = savedLow;
+      seqLen = savedSeqLen;
+    }
+  }
+
+  @Override public boolean isEof(int i) {
+    if (i < 0)
+      return false;
+    if (i == 0 || index >= endIndex)
+      return index >= endIndex;
+    int savedIndex = index;
+    boolean savedLow = lowSurrogate;
+    int savedSeqLen = seqLen;
+    try {
+      skipChars(i);
+      return index >= endIndex;
+    } finally {
+      index = savedIndex;
+      lowSurrogate = savedLow;
+      seqLen = savedSeqLen;
+    }
+  }
+
+  @Override public boolean readUntil(Predicate<CharSource> predicate, StringBuilder target, int minLen, int maxLen) {
+    boolean matched = false;
+    for (int len = 0; len < maxLen && !(isEof(0)); len++) {
+      matched = len >= minLen && predicate.test(this);
+      if (matched)
+        break;
+      char c = read();
+      if (target != null)
+        target.append(c);
+    }
+    return matched;
+  }
+
+  /** Lines are split at '\n' bytes, which never appear inside UTF-8 multi-byte sequences */
+  @Override public List<CharSource> splitLines(int chunkSize) {
+    List<CharSource> result = new ArrayList<>();
+    for (int start = index; start < endIndex; ) {
+      int end = endIndex - start <= chunkSize ? endIndex : start + chunkSize;
+      while (end < endIndex && buf.get(end - 1) != '\n')
+        end++;
+      result.add(new ByteBufferCharSource(buf, start, end));
+      start = end;
+    }
+    return result;
+  }
+
+  /**
+   * Fast path for char set terminators. ASCII bytes are checked against the lookup table directly, the bookmark is
+   * updated once for the whole span.
+   */
+  @Override public boolean readUntil(String chars, @Nullable Collection<String> strs, StringBuilder target, boolean include, int minLen, int maxLen) {
+    CharLookup terms = CharLookup.of(chars);
+    CharLookup strStarts = strStartsCache.get(strs);
+    int len = 0;
+    int lines = 0;
+    int lineStart = 0;
+    boolean matched = false;
+    for (; len < maxLen && index < endIndex; len++) {
+      byte b = buf.get(index);
+      char c = b >= 0 ? (char) b : toChar(decode(index), lowSurrogate);
+      if (len >= minLen
+          && (terms.contains(c) || strStarts != null && strStarts.contains(c) && startsWithAny(strs)) == include) {
+        matched = true;
+        break;
+      }
+      if (target != null)
+        target.append(c);
+      if (b >= 0) {
+        index++;
+        if (c == '\n') {
+          lines++;
+          lineStart = len + 1;
+        }
+      } else
+        advance();
+    }
+    bookmark.append(len, lines, len - lineStart);
+    return matched;
+  }
+
+  private void skipChars(int n) {
+    for (int i = 0; i < n && index < endIndex; i++) {
+      if (buf.get(index) >= 0)
+        index++;
+      else {
+        decode(index);
+        advance();
+      }
+    }
+  }
+
+  /** Move to next char after {@link #decode(int)} of current index */
+  private void advance() {
+    if (seqLen == 4 && !lowSurrogate)
+      lowSurrogate = true;
+    else {
+      index += seqLen;
+      lowSurrogate = false;
+    }
+  }
+
+  private static char toChar(int codePoint, boolean low) {
+    if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+      return (char) codePoint;
+    return low ? Character.lowSurrogate(codePoint) : Character.highSurrogate(codePoint);
+  }
+
+  /** Decode the multi-byte sequence at index p and set seqLen. Malformed sequence is decoded as 1 byte of U+FFFD */
+  private int decode(int p) {
+    int b = buf.get(p) & 0xFF;
+    int len;
+    int cp;
+    int min;
+    if (b >= 0xC2 && b <= 0xDF) {
+      len = 2; cp = b & 0x1F; min = 0x80;
+    } else if (b >= 0xE0 && b <= 0xEF) {
+      len = 3; cp = b & 0x0F; min = 0x800;
+    } else if (b >= 0xF0 && b <= 0xF4) {
+      len = 4; cp = b & 0x07; min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+    } else
+      return malformed();
+
+    if (p + len > endIndex)
+      return malformed();
+    for (int i = 1; i < len; i++) {
+      int cb = buf.get(p + i);
+      if ((cb & 0xC0) != 0x80)
+        return malformed();
+      cp = (cp << 6) | (cb & 0x3F);
+    }
+    if (cp < min || cp > Character.MAX_CODE_POINT || cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)
+      return malformed();
+    seqLen = len;
+    return cp;
+  }
+
+  private int malformed() {
+    seqLen = 1;
+    return REPLACEMENT_CHAR;
+  }
+}
@@ -0,0 +1,109 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.charsource;
+
+import org.jsonex.core.type.Nullable;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed lookup table of a terminator char set. ASCII chars are checked with a bitmap, others fall back to
+ * String.indexOf(). Tables are cached by the chars string, as terminators are normally constants in parser options.
+ */
+final class CharLookup {
+  private final static int MAX_CACHE_SIZE = 1000;
+  private final static Map<String, CharLookup> cache = new ConcurrentHashMap<>();
+  private final static CharLookup ANY = new CharLookup("", true);
+
+  private final long low;   // chars 0 - 63
+  private final long high;  // chars 64 - 127
+  private final @Nullable String nonAscii;
+  private final boolean any;
+
+  private CharLookup(String chars, boolean any) {
+    this.any = any;
+    long l = any ? -1 : 0, h = any ? -1 : 0;
+    StringBuilder others = new StringBuilder();
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (c < 64)
+        l |= 1L << c;
+      else if (c < 128)
+        h |= 1L << (c - 64);
+      else
+        others.append(c);
+    }
+    low = l;
+    high = h;
+    nonAscii = others.length() == 0 ? null : others.toString();
+  }
+
+  static CharLookup of(String chars) {
+    CharLookup result = cache.get(chars);
+    if (result == null) {
+      result = new CharLookup(chars, false);
+      if (cache.size() < MAX_CACHE_SIZE)  // Avoid unbounded growth if caller passes dynamic strings
+        cache.put(chars, result);
+    }
+    return result;
+  }
+
+  /** Table of the first chars of the strings, used to avoid checking the strings for each char */
+  static @Nullable CharLookup ofFirstChars(@Nullable Collection<String> strs) {
+    if (strs == null || strs.isEmpty())
+      return null;
+    StringBuilder sb = new StringBuilder();
+    for (String s : strs) {
+      if (s.isEmpty())
+        return ANY;  // Empty string matches any position
+      sb.append(s.charAt(0));
+    }
+    return of(sb.toString());
+  }
+
+  /**
+   * Cache of {@link #ofFirstChars} by the collection instance, so that a source doesn't build the table for each call. It
+   * keeps the last two collections, e.g. the terminators of key and value. The collections are expected to be unchanged,
+   * e.g. the terminators built by parser options. It's not thread safe, each source has its own cache.
+   */
+  static final class FirstCharsCache {
+    private Collection<String> strs1, strs2;
+    private CharLookup lookup1, lookup2;
+
+    @Nullable CharLookup get(@Nullable Collection<String> strs) {
+      if (strs == null)
+        return null;
+      if (strs == strs1)
+        return lookup1;
+      if (strs != strs2) {
+        strs2 = strs;
+        lookup2 = ofFirstChars(strs);
+      }
+      // Most recently used in slot 1
+      Collection<String> s = strs1;
+      CharLookup l = lookup1;
+      strs1 = strs2;
+      lookup1 = lookup2;
+      strs2 = s;
+      lookup2 = l;
+      return lookup1;
+    }
+  }
+
+  boolean contains(char c) {
+    if (c < 64)
+      return (low & (1L << c)) != 0;
+    if (c < 128)
+      return (high & (1L << (c - 64))) != 0;
+    return any || nonAscii != null && nonAscii.indexOf(c) >= 0;
+  }
+}
@@ -14,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsonex.core.type.Nullable;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Predicate;
 
 @Slf4j
@@ -35,6 +36,22 @@ public abstract class CharSource {
   public boolean isEof() { return isEof(0); }
   public char peek() { return peek(0); }
 
+  /**
+   * Split the remaining input at line breaks into chunks of about chunkSize, so that they can be processed in parallel.
+   * Each chunk is an independent CharSource with bookmark starts from 0. This source is not changed.
+   *
+   * @return null if split is not supported, e.g. stream based source
+   */
+  public @Nullable List<CharSource> splitLines(int chunkSize) { return null; }
+
+  /** Continue the bookmark from the given one, e.g. the end of the previous chunk. It should be called before reading */
+  public CharSource setBookmarkBase(Bookmark base) {
+    bookmark.line = base.line;
+    bookmark.col = base.col;
+    bookmark.pos = base.pos;
+    return this;
+  }
+
   /**
    * Skip chars until eof or length or predicate condition matches
    * If target is set, the skipped the chars will be saved in the target
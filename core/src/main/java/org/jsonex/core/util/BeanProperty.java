@@ -14,6 +14,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.function.Function;
 
@@ -47,35 +50,98 @@ public class BeanProperty {
   }
   
   public void set(Object obj, Object value){
+    PropertySetter s = fastSetter;
+    if (s == null)
+      s = fastSetter = buildSetter();
+    if (s == NOT_MUTABLE)
+      throw new InvokeRuntimeException("field is not mutable: " + name + ", class:" + obj.getClass());
     try{
-      if (setter != null){
-        setter.setAccessible(true);
-        setter.invoke(obj, value);
-        return;
-      } else if (field != null) {
-        field.setAccessible(true);
-        field.set(obj, value);
-        return;
-      }
-    } catch(Exception e){
+      s.set(obj, value);
+    } catch (VirtualMachineError e) {  // Other Errors are wrapped, same as the reflection invocation
+      throw e;
+    } catch(Throwable e){
       throw new InvokeRuntimeException("error set value:" + name + ", class=" + obj.getClass() + ",value=" + value, e);
     }
-    throw new InvokeRuntimeException("field is not mutable: " + name + ", class:" + obj.getClass());
   }
   
   public Object get(Object obj){
+    PropertyGetter g = fastGetter;
+    if (g == null)
+      g = fastGetter = buildGetter();
+    if (g == NOT_READABLE)
+      throw new InvokeRuntimeException("field is not readable: " + name + ", class:" + obj.getClass());
     try {
-      if (getter != null) {
-        getter.setAccessible(true);
-        return getter.invoke(obj);
-      } else if (field != null) {
-        field.setAccessible(true);
-        return field.get(obj);
-      }
-    } catch(Exception e) {
+      return g.get(obj);
+    } catch (VirtualMachineError e) {  // Other Errors are wrapped, same as the reflection invocation
+      throw e;
+    } catch(Throwable e) {
       throw new InvokeRuntimeException("error get value:" + name + ", class:" + obj.getClass(), e);
     }
-    throw new InvokeRuntimeException("field is not readable: " + name + ", class:" + obj.getClass());
+  }
+
+  // Accessors are built once on first access. Racing threads may build it more than once which is harmless
+  private interface PropertyGetter { Object get(Object obj) throws Throwable; }
+  private interface PropertySetter { void set(Object obj, Object value) throws Throwable; }
+  private static final PropertyGetter NOT_READABLE = obj -> null;
+  private static final PropertySetter NOT_MUTABLE = (obj, value) -> {};
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+  private PropertyGetter fastGetter;
+  private PropertySetter fastSetter;
+
+  private PropertyGetter buildGetter() {
+    if (getter != null) {
+      MethodHandle mh = toMethodHandle(getter, () -> MethodHandles.lookup().unreflect(getter));
+      if (mh == null)
+        return getter::invoke;
+      MethodHandle h = mh.asType(GETTER_TYPE);
+      return obj -> (Object) h.invokeExact(obj);
+    }
+    if (field != null) {
+      MethodHandle mh = toMethodHandle(field, () -> MethodHandles.lookup().unreflectGetter(field));
+      if (mh == null)
+        return field::get;
+      MethodHandle h = mh.asType(GETTER_TYPE);
+      return obj -> (Object) h.invokeExact(obj);
+    }
+    return NOT_READABLE;
+  }
+
+  private PropertySetter buildSetter() {
+    if (setter != null) {
+      MethodHandle mh = toMethodHandle(setter, () -> MethodHandles.lookup().unreflect(setter));
+      if (mh == null)
+        return setter::invoke;
+      MethodHandle h = mh.asType(SETTER_TYPE);
+      return (obj, value) -> { h.invokeExact(obj, value); };
+    }
+    if (field != null) {
+      MethodHandle mh = toMethodHandle(field, () -> MethodHandles.lookup().unreflectSetter(field));
+      if (mh == null)
+        return field::set;
+      MethodHandle h = mh.asType(SETTER_TYPE);
+      return (obj, value) -> { h.invokeExact(obj, value); };
+    }
+    return NOT_MUTABLE;
+  }
+
+  private interface HandleCreator { MethodHandle create() throws IllegalAccessException; }
+
+  /**
+   * Make the member accessible and create the MethodHandle. If access is denied (e.g. by SecurityManager or module
+   * system) return null, so that it will fall back to reflection
+   */
+  private static MethodHandle toMethodHandle(AccessibleObject member, HandleCreator creator) {
+    try {
+      member.setAccessible(true);
+    } catch (RuntimeException e) {
+      // Ignore, it still works with public members
+    }
+    try {
+      return creator.create();
+    } catch (IllegalAccessException | RuntimeException e) {
+      return null;
+    }
   }
   
   public <T extends Annotation> T getAnnotation(Class<T> cls) {
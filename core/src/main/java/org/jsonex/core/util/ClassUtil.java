@@ -84,18 +84,16 @@ public class ClassUtil {
    *
    * <P>The BeanProperties are cached
    */
-  public static Map<String, BeanProperty> getProperties(Class<?> cls) {
-    Map<String, BeanProperty> result = beanPropertyCache.get(cls);
-    if (result == null) {
-      synchronized(beanPropertyCache) {
-        result = _getProperties(cls);
-        beanPropertyCache.put(cls, result);
-      }
-    }
-    return result;
-  }
+  public static Map<String, BeanProperty> getProperties(Class<?> cls) { return beanPropertyCache.get(cls); }
+
+  /** Populate the BeanProperty cache of the classes, e.g. at startup to avoid computing it with live traffic */
+  public static void warmUpProperties(Iterable<Class<?>> classes) { classes.forEach(beanPropertyCache::get); }
+  public static void warmUpProperties(Class<?>... classes) { warmUpProperties(Arrays.asList(classes)); }
 
-  private static final WeakHashMap<Class<?>, Map<String, BeanProperty>> beanPropertyCache = new WeakHashMap<>();
+  // ClassValue is lock free for reads and doesn't prevent the classes from being unloaded
+  private static final ClassValue<Map<String, BeanProperty>> beanPropertyCache = new ClassValue<Map<String, BeanProperty>>() {
+    @Override protected Map<String, BeanProperty> computeValue(Class<?> cls) { return _getProperties(cls); }
+  };
 
   private static Map<String, BeanProperty> _getProperties(Class<?> cls) {
     // Find all the getter/setter methods
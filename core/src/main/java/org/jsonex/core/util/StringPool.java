@@ -0,0 +1,62 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.util;
+
+/**
+ * A bounded pool to dedupe strings that repeat a lot, e.g. keys of parsed documents. Strings are looked up by chars, so
+ * no String is created if it's already in the pool.
+ *
+ * <p>It's a direct mapped cache, a slot is replaced by the latest string with the same slot, so the memory is bounded
+ * by the size. It can be shared across threads, as slots are replaced atomically and Strings are immutable.
+ */
+public class StringPool {
+  /** Longer strings are not pooled, as they are unlikely to be repeated */
+  private final static int MAX_LENGTH = 256;
+  private final String[] slots;
+  private final int mask;
+
+  public StringPool() { this(4096); }
+  public StringPool(int size) {
+    int capacity = 1;
+    while (capacity < size)
+      capacity <<= 1;
+    slots = new String[capacity];
+    mask = capacity - 1;
+  }
+
+  public String get(CharSequence chars) { return get(chars, 0, chars.length()); }
+
+  /** @return The pooled string of chars between start (inclusive) and end (exclusive) */
+  public String get(CharSequence chars, int start, int end) {
+    if (end - start > MAX_LENGTH)
+      return chars.subSequence(start, end).toString();
+
+    int hash = 0;  // Same as String.hashCode()
+    for (int i = start; i < end; i++)
+      hash = 31 * hash + chars.charAt(i);
+    int idx = (hash ^ (hash >>> 16)) & mask;
+    String str = slots[idx];
+    if (str != null && str.hashCode() == hash && contentEquals(str, chars, start, end))
+      return str;
+
+    str = chars.subSequence(start, end).toString();
+    slots[idx] = str;
+    return str;
+  }
+
+  private static boolean contentEquals(String str, CharSequence chars, int start, int end) {
+    if (str.length() != end - start)
+      return false;
+    for (int i = start; i < end; i++)
+      if (str.charAt(i - start) != chars.charAt(i))
+        return false;
+    return true;
+  }
+}
@@ -9,6 +9,10 @@
 
 package org.jsonex.core.util;
 
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -88,43 +92,89 @@ public class StringUtil {
    *
    * @param isWchar  Is wide character (Unicode)
    */
+  @SneakyThrows  // StringBuilder doesn't throw IOException
   public static String cEscape(String str, char quoteChar, boolean isWchar) {
     if (str == null)
       return null;
 
     // First scan to check if it needs escape just to avoid create new String object for better performance.
+    String[] escapes = escapeTable(quoteChar, isWchar);
     int i;
     for (i = 0; i < str.length(); i++) {
       char c = str.charAt(i);
-      if (c < MIN_PRINTABLE_CHAR || C_ESC_CHAR.indexOf(c) >= 0)
+      if (c < escapes.length && escapes[c] != null)
         break;
     }
     if (i == str.length())  // No need escape
       return str;
-    
-    // Second scan, Do escape
-    StringBuilder result = new StringBuilder();
-    for (i = 0; i < str.length(); i++) {
+
+    return cEscape(new StringBuilder(str.length() + 16), str, quoteChar, isWchar).toString();
+  }
+
+  /**
+   * Same as {@link #cEscape(String, char, boolean)}, but the escaped string is appended to out directly in a single scan.
+   * The runs of chars that don't need escape are appended as is, so no intermediate String is created.
+   */
+  public static <T extends Appendable> T cEscape(T out, String str, char quoteChar, boolean isWchar) throws IOException {
+    if (str == null) {
+      out.append("null");
+      return out;
+    }
+
+    String[] escapes = escapeTable(quoteChar, isWchar);
+    int start = 0;
+    for (int i = 0; i < str.length(); i++) {
       char c = str.charAt(i);
-      // check if it's a special printable char
+      String esc;
+      if (c >= escapes.length || (esc = escapes[c]) == null)
+        continue;
+      appendRun(out, str, start, i);
+      out.append(esc);
+      start = i + 1;
+    }
+    appendRun(out, str, start, str.length());
+    return out;
+  }
+
+  private static void appendRun(Appendable out, String str, int start, int end) throws IOException {
+    if (start == end)
+      return;
+    if (out instanceof StringBuilder) {
+      if (start == 0 && end == str.length())
+        ((StringBuilder) out).append(str);
+      else
+        ((StringBuilder) out).append(str, start, end);
+    } else if (out instanceof Writer)
+      ((Writer) out).write(str, start, end - start);
+    else
+      out.append(str, start, end);
+  }
+
+  // Escaped forms indexed by [isWchar][index of quoteChar in C_ESC_CHAR][char], null if no escape is needed
+  private final static String[][][] ESCAPE_TABLES = {
+      { buildEscapeTable('\'', false), buildEscapeTable('"', false), buildEscapeTable('`', false) },
+      { buildEscapeTable('\'', true), buildEscapeTable('"', true), buildEscapeTable('`', true) },
+  };
+
+  private static String[] escapeTable(char quoteChar, boolean isWchar) {
+    int idx = C_ESC_CHAR.indexOf(quoteChar);
+    return idx >= 0 && idx < 3 ? ESCAPE_TABLES[isWchar ? 1 : 0][idx] : buildEscapeTable(quoteChar, isWchar);
+  }
+
+  private static String[] buildEscapeTable(char quoteChar, boolean isWchar) {
+    String[] result = new String[128];
+    for (char c = 0; c < result.length; c++) {
       int idx = C_ESC_CHAR.indexOf(c);
       if (idx >= 3 || quoteChar == c) {  // first 3 chars are quote chars
-        result.append('\\');
-        result.append(C_ESC_SYMB.charAt(idx));
+        result[c] = "\\" + (idx >= 0 ? C_ESC_SYMB.charAt(idx) : c);  // Custom quote char is escaped as is
       } else if (c < MIN_PRINTABLE_CHAR) {  // check if it's a un-printable char
-        if (!isWchar) {
-          result.append("\\0");
-          result.append(fillString(Integer.toOctalString((int)c),2,'0',true));
-        } else {
-          result.append("\\u");
-          result.append(fillString(Integer.toHexString((int)c),4,'0',true));
-        }
-      }else
-        result.append(c);
+        result[c] = isWchar ? "\\u" + fillString(Integer.toHexString(c), 4, '0', true)
+            : "\\0" + fillString(Integer.toOctalString(c), 2, '0', true);
+      }
     }
-    return result.toString();
+    return result;
   }
-  
+
   public static String lowerFirst(String str) {
     if (Character.isLowerCase(str.charAt(0)))
       return str;
@@ -0,0 +1,190 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * An {@link Appendable} that encodes chars as UTF-8 bytes directly into a reusable byte array, so writers such as
+ * TDJSONWriter, JSONCoder and CSVWriter can produce bytes without an intermediate String or charset encoder.
+ *
+ * <p>If an {@link OutputStream} or {@link WritableByteChannel} is given, the buffer is written to it when it's full and
+ * on {@link #flush()}. Otherwise, the buffer grows as needed and the result can be got by {@link #toByteArray()}. The
+ * channel is expected to be in blocking mode.
+ *
+ * <p>Malformed surrogate chars are encoded as '?', same as {@link String#getBytes(java.nio.charset.Charset)}. It's not
+ * thread safe.
+ */
+public class Utf8Sink implements Appendable, Flushable, Closeable {
+  private final static int MIN_BUFFER_SIZE = 16;
+  private final OutputStream out;
+  private final WritableByteChannel channel;
+  private byte[] buf;
+  private ByteBuffer byteBuffer;
+  private int pos;
+  /** The high surrogate waiting for the low surrogate, 0 if none */
+  private char highSurrogate;
+
+  /** In memory sink, use {@link #toByteArray()} to get the result */
+  public Utf8Sink() { this(null, null, 1024); }
+  public Utf8Sink(OutputStream out) { this(out, 8192); }
+  public Utf8Sink(OutputStream out, int bufferSize) { this(out, null, bufferSize); }
+  public Utf8Sink(WritableByteChannel channel) { this(channel, 8192); }
+  public Utf8Sink(WritableByteChannel channel, int bufferSize) { this(null, channel, bufferSize); }
+
+  private Utf8Sink(OutputStream out, WritableByteChannel channel, int bufferSize) {
+    this.out = out;
+    this.channel = channel;
+    this.buf = new byte[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+  }
+
+  @Override public Utf8Sink append(CharSequence csq) throws IOException {
+    return csq == null ? append("null") : append(csq, 0, csq.length());
+  }
+
+  @Override public Utf8Sink append(CharSequence csq, int start, int end) throws IOException {
+    if (csq == null)
+      return append("null", start, end);
+
+    int i = start;
+    while (i < end) {
+      if (pos == buf.length)
+        drain(1);
+      if (highSurrogate == 0) {  // ASCII run, no capacity check for each char
+        int limit = Math.min(end, i + buf.length - pos);
+        char c;
+        while (i < limit && (c = csq.charAt(i)) < 0x80) {
+          buf[pos++] = (byte) c;
+          i++;
+        }
+      }
+      if (i < end)
+        writeChar(csq.charAt(i++));
+    }
+    return this;
+  }
+
+  @Override public Utf8Sink append(char c) throws IOException {
+    writeChar(c);
+    return this;
+  }
+
+  /** Number of bytes in the buffer, i.e. not yet written to the stream or channel */
+  public int size() { return pos; }
+
+  /** @return A copy of the bytes in the buffer */
+  public byte[] toByteArray() { return Arrays.copyOf(buf, pos); }
+
+  /** Discard the bytes in the buffer, so that the buffer can be reused */
+  public Utf8Sink reset() {
+    pos = 0;
+    highSurrogate = 0;
+    return this;
+  }
+
+  /**
+   * Write the buffer to the stream or channel, and flush the stream. A pending high surrogate is written as '?', so a
+   * surrogate pair shouldn't be split by flush. For in memory sink, only the pending high surrogate is written
+   */
+  @Override public void flush() throws IOException {
+    if (highSurrogate != 0) {
+      highSurrogate = 0;
+      writeByte('?');
+    }
+    if (out == null && channel == null)
+      return;
+    writeBuffer();
+    if (out != null)
+      out.flush();
+  }
+
+  /** Flush and close the stream or channel */
+  @Override public void close() throws IOException {
+    flush();
+    if (out != null)
+      out.close();
+    if (channel != null)
+      channel.close();
+  }
+
+  private void writeChar(char c) throws IOException {
+    if (highSurrogate != 0) {
+      char high = highSurrogate;
+      highSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int cp = Character.toCodePoint(high, c);
+        ensure(4);
+        buf[pos++] = (byte) (0xF0 | cp >> 18);
+        buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+        buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+        buf[pos++] = (byte) (0x80 | cp & 0x3F);
+        return;
+      }
+      writeByte('?');
+    }
+
+    if (c < 0x80)
+      writeByte(c);
+    else if (c < 0x800) {
+      ensure(2);
+      buf[pos++] = (byte) (0xC0 | c >> 6);
+      buf[pos++] = (byte) (0x80 | c & 0x3F);
+    } else if (Character.isHighSurrogate(c))
+      highSurrogate = c;
+    else if (Character.isLowSurrogate(c))
+      writeByte('?');
+    else {
+      ensure(3);
+      buf[pos++] = (byte) (0xE0 | c >> 12);
+      buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+      buf[pos++] = (byte) (0x80 | c & 0x3F);
+    }
+  }
+
+  private void writeByte(int b) throws IOException {
+    ensure(1);
+    buf[pos++] = (byte) b;
+  }
+
+  private void ensure(int len) throws IOException {
+    if (pos + len > buf.length)
+      drain(len);
+  }
+
+  /** Make room for len bytes, either write out the buffer or grow it for in memory sink */
+  private void drain(int len) throws IOException {
+    if (out == null && channel == null)
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + len));
+    else
+      writeBuffer();
+  }
+
+  private void writeBuffer() throws IOException {
+    if (pos == 0)
+      return;
+    if (out != null)
+      out.write(buf, 0, pos);
+    else {
+      if (byteBuffer == null)
+        byteBuffer = ByteBuffer.wrap(buf);
+      byteBuffer.clear();
+      byteBuffer.limit(pos);
+      while (byteBuffer.hasRemaining())
+        channel.write(byteBuffer);
+    }
+    pos = 0;
+  }
+}
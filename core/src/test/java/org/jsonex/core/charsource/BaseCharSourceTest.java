@@ -2,6 +2,9 @@ package org.jsonex.core.charsource;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static junit.framework.Assert.*;
 
 public abstract class BaseCharSourceTest {
@@ -46,6 +49,51 @@ public abstract class BaseCharSourceTest {
     assertTrue("should match with */", cs.readUntilMatch("*/", false, target));
   }
 
+  @Test public void testReadUntilChars() {
+    CharSource cs = createCharSource(" \n\u00a0 ab\nc,d//e:f\u00e9g");
+    assertTrue(cs.skipSpacesAndReturns());
+    assertEquals("Bookmark(line=1, col=2, pos=4)", cs.getBookmark().toString());
+
+    StringBuilder sb = new StringBuilder();
+    assertTrue(cs.readUntil(",", null, sb, true, 0, 100));
+    assertEquals("ab\nc", sb.toString());
+    assertEquals("Bookmark(line=2, col=1, pos=8)", cs.getBookmark().toString());
+
+    sb.setLength(0);
+    assertTrue(cs.readUntil(":", Arrays.asList("/*", "//"), sb, true, 1, 100));  // minLen skips the ','
+    assertEquals(",d", sb.toString());
+    assertTrue(cs.startsWith("//"));
+
+    sb.setLength(0);
+    assertFalse(cs.readUntil(":", null, sb, true, 0, 3));  // maxLen reached
+    assertEquals("//e", sb.toString());
+    cs.skip();
+    assertEquals("f", cs.readUntil("\u00e9"));
+    assertEquals("Bookmark(line=2, col=8, pos=15)", cs.getBookmark().toString());
+    assertFalse(cs.skipUntil("xyz"));
+    assertTrue(cs.isEof());
+  }
+
+  @Test public void testReadUntilAlternatingStrs() {
+    CharSource cs = createCharSource("a=>b::c->d=>e");
+    List<String> arrow = Arrays.asList("=>"), colons = Arrays.asList("::"), dash = Arrays.asList("->");
+    assertEquals("a", readUntil(cs, arrow));
+    cs.skip(2);
+    assertEquals("b", readUntil(cs, colons));
+    cs.skip(2);
+    assertEquals("c", readUntil(cs, dash));
+    cs.skip(2);
+    assertEquals("d", readUntil(cs, arrow));
+    cs.skip(2);
+    assertEquals("e", readUntil(cs, colons));
+  }
+
+  private static String readUntil(CharSource cs, List<String> strs) {
+    StringBuilder sb = new StringBuilder();
+    cs.readUntil("", strs, sb, true, 0, 100);
+    return sb.toString();
+  }
+
   @Test public void testReadQuotedString() {
     assertReadQuotedString(
         "'It\\'s a quoted \\\"string\\\" with escape \\n \\r \\f \\t \\v \\? \\u9829'",
@@ -0,0 +1,45 @@
+package org.jsonex.core.charsource;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class ByteBufferCharSourceTest extends BaseCharSourceTest {
+  protected CharSource createCharSource(String str, int startIndex, int endIndex) {
+    String prefix = str.substring(0, startIndex);
+    byte[] bytes = str.substring(0, endIndex).getBytes(StandardCharsets.UTF_8);
+    return new ByteBufferCharSource(ByteBuffer.wrap(bytes), prefix.getBytes(StandardCharsets.UTF_8).length, bytes.length);
+  }
+
+  @Test public void testMultiByteChars() {
+    String str = "a\u00e9\u4e2d\uD83D\uDE00b, c";
+    CharSource cs = createCharSource(str);
+    assertEquals('a', cs.read());
+    assertEquals('\u4e2d', cs.peek(1));
+    assertEquals('\uDE00', cs.peek(3));
+    assertEquals('\u00e9', cs.read());
+    assertEquals('\u4e2d', cs.read());
+    assertEquals('\uD83D', cs.read());
+    assertEquals('\uDE00', cs.peek());
+    assertEquals('\uDE00', cs.read());
+    assertEquals("Bookmark(line=0, col=5, pos=5)", cs.getBookmark().toString());
+
+    cs = createCharSource(str);
+    assertEquals("a\u00e9\u4e2d\uD83D\uDE00b", cs.readUntil(","));
+    assertEquals(6, cs.getPos());
+    cs.skip();
+    cs.skipSpacesAndReturns();
+    assertEquals("c", cs.readUntil(","));
+    assertTrue(cs.isEof());
+  }
+
+  @Test public void testMalformed() {
+    byte[] bytes = { 'a', (byte) 0xC3, 'b', (byte) 0xE4, (byte) 0xB8 };  // Truncated sequences
+    CharSource cs = new ByteBufferCharSource(bytes);
+    assertEquals("a\uFFFDb\uFFFD\uFFFD", cs.readUntil(""));
+  }
+}
@@ -74,6 +74,7 @@ public class ClassUtilTest {
         throw new NullPointerException();
     }
     public String get() { return "emptyName"; }
+    public String getMethodError() { throw new AssertionError("Simulate error in getter"); }
   }
 
   @SneakyThrows
@@ -127,6 +128,24 @@ public class ClassUtilTest {
     assertTrue(prop.isTransient());
   }
 
+  @SneakyThrows
+  @Test public void testGetPropertiesConcurrently() {
+    ClassUtil.warmUpProperties(A.class, B.class);
+    Map<String, BeanProperty> properties = ClassUtil.getProperties(B.class);
+    Thread[] threads = new Thread[8];
+    Object[] results = new Object[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      int idx = i;
+      threads[i] = new Thread(() -> results[idx] = ClassUtil.getProperties(C.class));
+      threads[i].start();
+    }
+    for (Thread t : threads)
+      t.join();
+    for (Object r : results)
+      assertSame(ClassUtil.getProperties(C.class), r);
+    assertSame(properties, ClassUtil.getProperties(B.class));
+  }
+
   @Test public void testGetPropertiesWithExceptions () {
     Map<String, BeanProperty> properties = ClassUtil.getProperties(C.class);
     C c = new C();
@@ -161,6 +180,13 @@ public class ClassUtilTest {
       assertEquals("error set value:methodSetOnly, class=class org.jsonex.core.util.ClassUtilTest$C,value=null",
           e.getMessage());
     }
+
+    try {
+      properties.get("methodError").get(c);
+      fail("Should throw exception");
+    } catch(InvokeRuntimeException e) {
+      assertTrue(e.getCause() instanceof AssertionError);
+    }
   }
 
   @Test public void testFindCallerStack() {
@@ -0,0 +1,32 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class StringPoolTest {
+  @Test public void testGet() {
+    StringPool pool = new StringPool(16);
+    String key = pool.get(new StringBuilder("  key1 "), 2, 6);
+    assertEquals("key1", key);
+    assertSame(key, pool.get(new StringBuilder("key1")));
+    assertSame(key, pool.get("[key1]", 1, 5));
+    assertEquals("key2", pool.get("key2"));
+    assertEquals("", pool.get(""));
+
+    StringBuilder longStr = new StringBuilder(StringUtil.padEnd("", 300, 'a'));
+    assertNotSame(pool.get(longStr), pool.get(longStr));  // Not pooled
+    assertEquals(longStr.toString(), pool.get(longStr));
+  }
+}
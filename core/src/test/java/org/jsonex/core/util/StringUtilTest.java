@@ -11,6 +11,10 @@ package org.jsonex.core.util;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -60,6 +64,20 @@ public class StringUtilTest {
     assertEquals("abc", StringUtil.cEscape("abc"));
   }
 
+  @Test public void testCEscapeToAppendable() throws IOException {
+    String org = "ab'c\"\n\t\u0001\u4e2d`\\";
+    for (char quote : new char[]{'"', '\'', '`', '|'}) {
+      for (boolean isWchar : new boolean[]{true, false}) {
+        String expected = StringUtil.cEscape(org, quote, isWchar);
+        assertEquals(expected, StringUtil.cEscape(new StringBuilder(), org, quote, isWchar).toString());
+        assertEquals(expected, StringUtil.cEscape(new StringWriter(), org, quote, isWchar).toString());
+        assertEquals(expected, StringUtil.cEscape(CharBuffer.allocate(100), org, quote, isWchar).flip().toString());
+      }
+    }
+    assertEquals("abc", StringUtil.cEscape(new StringBuilder(), "abc", '"', true).toString());
+    assertEquals("a\\\"b\\u0001", StringUtil.cEscape(new StringBuilder(), "a\"b\u0001", '"', true).toString());
+  }
+
   @Test public void testLowerUpperFirst() {
     assertEquals("abcd", StringUtil.lowerFirst("Abcd"));
     assertEquals("abcd", StringUtil.lowerFirst("abcd"));
@@ -0,0 +1,56 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.core.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Utf8SinkTest {
+  private final static String STR = "abc\u00e9\u4e2d\u6587 \ud83d\ude00 bad\ud800x\udc00 " + StringUtil.padEnd("", 40, 'z');
+
+  @Test public void testInMemory() throws IOException {
+    Utf8Sink sink = new Utf8Sink();
+    sink.append(STR).append('!').append(STR, 1, 6).append(null);
+    String expected = STR + "!" + STR.substring(1, 6) + "null";
+    assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), sink.toByteArray());
+
+    assertEquals(0, sink.reset().size());
+    sink.append(new StringBuilder("\ud83d")).append('\ude00');  // Surrogate pair split across appends
+    assertArrayEquals("\ud83d\ude00".getBytes(StandardCharsets.UTF_8), sink.toByteArray());
+  }
+
+  @Test public void testOutputStreamAndChannel() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (Utf8Sink sink = new Utf8Sink(out, 1)) {  // Small buffer to be written out many times
+      for (int i = 0; i < 10; i++)
+        sink.append(STR);
+    }
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 10; i++)
+      expected.append(STR);
+    assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), out.toByteArray());
+
+    out.reset();
+    Utf8Sink sink = new Utf8Sink(Channels.newChannel(out), 16);
+    sink.append(STR).append(STR).flush();
+    assertArrayEquals((STR + STR).getBytes(StandardCharsets.UTF_8), out.toByteArray());
+
+    out.reset();
+    new Utf8Sink(out).append("a\ud83d").flush();  // Trailing high surrogate
+    assertArrayEquals("a?".getBytes(StandardCharsets.UTF_8), out.toByteArray());
+  }
+}
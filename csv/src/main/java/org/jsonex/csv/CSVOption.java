@@ -9,6 +9,10 @@ public class CSVOption {
   char fieldSep = ',';
   char recordSep = '\n';
   char quoteChar = '"';
+  /** If false, start and end Bookmark won't be set in the nodes to save memory and allocations for large documents */
+  boolean trackPosition = true;
+  /** Store the rows column-wise if they have the same number of fields, see {@link org.jsonex.treedoc.TDNode#columnarize()} */
+  boolean columnar;
 
   @Getter(lazy = true) private final String fieldAndRecord = "" + fieldSep + recordSep;
   @Getter(lazy = true) private final String fieldSepStr = "" + fieldSep;
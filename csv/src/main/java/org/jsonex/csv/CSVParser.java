@@ -21,6 +21,8 @@ public class CSVParser {
   public TDNode parse(CharSource src, CSVOption opt) { return parse(src, opt, new TreeDoc(null).getRoot()); }
   public TDNode parse(CharSource src, CSVOption opt, TDNode root) {
     root.setType(TDNode.Type.ARRAY);
+    if (opt.columnar)
+      root.columnarize();
     while (!src.isEof()) {
       if (!src.skipChars(SPACE_CHARS))
         break;
@@ -31,15 +33,15 @@ public class CSVParser {
 
   void readRecord(CharSource src, CSVOption opt, TDNode root) {
     TDNode row = new TDNode(root.getDoc(), null).setType(TDNode.Type.ARRAY);
-    row.setStart(src.getBookmark());
+    row.setStart(mark(src, opt));
     while (!src.isEof() && src.peek() != opt.recordSep) {
       if (!src.skipChars(SPACE_CHARS))
         break;
-      Bookmark start = src.getBookmark();
+      Bookmark start = mark(src, opt);
       TDNode field = row.createChild().setValue(readField(src, opt));
-      field.setStart(start).setEnd(src.getBookmark());
+      field.setStart(start).setEnd(mark(src, opt));
     }
-    row.setEnd(src.getBookmark());
+    row.setEnd(mark(src, opt));
     if (row.hasChildren())
       root.addChild(row);
     if (!src.isEof())
@@ -47,6 +49,8 @@ public class CSVParser {
 
   }
 
+  private static Bookmark mark(CharSource src, CSVOption opt) { return opt.trackPosition ? src.getBookmark() : null; }
+
   Object readField(CharSource src, CSVOption opt) {
     StringBuilder sb = new StringBuilder();
     boolean previousQuoted = false;
@@ -9,6 +9,9 @@ import org.junit.Test;
 
 import static org.jsonex.snapshottest.Snapshot.assertMatchesSnapshot;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 @Slf4j
@@ -24,6 +27,28 @@ public class CSVTest {
     assertEquals(node, node1);
   }
 
+  @Test public void testParseWithoutPosition() {
+    TDNode node = CSVParser.get().parse(FileUtil.loadResource(CSVTest.class, "test.csv"));
+    TDNode node1 = CSVParser.get().parse(
+        FileUtil.loadResource(CSVTest.class, "test.csv"), new CSVOption().setTrackPosition(false));
+    assertEquals(node, node1);
+    assertNotNull(node.getChild(0).getChild(0).getStart());
+    assertNull(node1.getChild(0).getStart());
+    assertNull(node1.getChild(0).getChild(0).getEnd());
+  }
+
+  @Test public void testParseColumnar() {
+    String csv = FileUtil.readResource(CSVTest.class, "test.csv");
+    TDNode node = CSVParser.get().parse(csv);
+    TDNode node1 = CSVParser.get().parse(csv, new CSVOption().setColumnar(true));
+    assertEquals(node, node1);
+    assertEquals(node.toString(), node1.toString());
+
+    TDNode node2 = CSVParser.get().parse("a,1\nb,2\n", new CSVOption().setColumnar(true));
+    assertTrue(node2.isColumnar());
+    assertEquals("[['a', 1], ['b', 2]]", node2.toString());
+  }
+
   @Test public void testReadField() {
     assertEquals("ab'cd", CSVParser.get().readField(new ArrayCharSource("'ab''cd'"),
         new CSVOption().setQuoteChar('\'')));
@@ -0,0 +1,292 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.treedoc;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Children of an array node stored column-wise. It's used when all the elements are either simple values, or flat
+ * records (MAP or ARRAY of simple values) with the same keys in the same order, e.g. rows of CSV or list of objects in
+ * API response. Keys are shared by all the rows, and the values of each key are stored in a primitive array if they
+ * have the same primitive type.
+ *
+ * <p>The elements are created as flyweight views on access, so they are not identical across calls, and they don't
+ * have start and end Bookmark. Changing values of the views is written back to the columns, structure changes are not
+ * supported.
+ */
+final class ColumnarArray extends AbstractList<TDNode> implements RandomAccess {
+  private final static String[] NO_KEYS = new String[0];
+  private final TDNode array;
+  /** Type of the rows, null before first row is added */
+  private TDNode.Type rowType;
+  private String[] keys;
+  private Map<String, Integer> keyIndex;
+  private Column[] columns;
+  private int size;
+  private int capacity = 16;
+
+  ColumnarArray(TDNode array) { this.array = array; }
+
+  @Override public int size() { return size; }
+
+  @Override public TDNode get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("index=" + index + "; size=" + size);
+    return rowType == TDNode.Type.SIMPLE ? new Cell(array, "" + index, index, 0) : new Row(index);
+  }
+
+  /**
+   * Add the row, the row is not kept, so it shouldn't be changed after added
+   *
+   * @return false if the row doesn't have the same shape as existing rows
+   */
+  boolean append(TDNode row) {
+    if (!row.key.equals(Integer.toString(size)))
+      return false;
+    if (rowType == null ? !init(row) : !matches(row))
+      return false;
+
+    if (size == capacity) {
+      capacity *= 2;
+      for (Column c : columns)
+        c.grow(capacity);
+    }
+    if (rowType == TDNode.Type.SIMPLE)
+      columns[0].set(size, row);
+    else
+      for (int i = 0; i < keys.length; i++)
+        columns[i].set(size, row.children.get(i));
+    size++;
+    return true;
+  }
+
+  /** Convert to normal nodes */
+  List<TDNode> toNodes() {
+    List<TDNode> result = new TDNode.ChildList(Math.max(size, 10));
+    for (int r = 0; r < size; r++) {
+      TDNode n = new TDNode(array, "" + r);
+      n.type = rowType;
+      if (rowType == TDNode.Type.SIMPLE)
+        columns[0].copyTo(r, n);
+      else if (keys.length > 0) {
+        n.children = new TDNode.ChildList(keys.length);
+        for (int c = 0; c < keys.length; c++) {
+          TDNode cn = new TDNode(n, keys[c]);
+          columns[c].copyTo(r, cn);
+          n.children.add(cn);
+        }
+      }
+      result.add(n);
+    }
+    return result;
+  }
+
+  private boolean init(TDNode row) {
+    if (row.type == TDNode.Type.SIMPLE) {
+      if (row.children != null)
+        return false;
+      keys = NO_KEYS;
+      columns = new Column[] { new Column(Column.kindOf(row), capacity) };
+    } else {
+      int len = row.getChildrenSize();
+      keys = new String[len];
+      keyIndex = new HashMap<>();
+      columns = new Column[len];
+      for (int i = 0; i < len; i++) {
+        TDNode cn = row.children.get(i);
+        if (!isSimple(cn) || cn.key.startsWith("$") || keyIndex.put(cn.key, i) != null)
+          return false;  // $id and $ref can't be supported as the node is not kept
+        keys[i] = cn.key;
+        columns[i] = new Column(Column.kindOf(cn), capacity);
+      }
+    }
+    rowType = row.type;
+    return true;
+  }
+
+  private boolean matches(TDNode row) {
+    if (row.type != rowType)
+      return false;
+    if (rowType == TDNode.Type.SIMPLE)
+      return row.children == null;
+    if (row.getChildrenSize() != keys.length)
+      return false;
+    for (int i = 0; i < keys.length; i++) {
+      TDNode cn = row.children.get(i);
+      if (!isSimple(cn) || !keys[i].equals(cn.key))
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean isSimple(TDNode node) { return node.type == TDNode.Type.SIMPLE && node.children == null; }
+
+  /** A view of record */
+  private class Row extends TDNode {
+    Row(int row) {
+      super(array, "" + row);
+      type = rowType;
+      if (keys.length > 0)
+        children = new Cells(this, row);
+    }
+
+    @Override public TDNode getChild(String name) {
+      Integer col = keyIndex.get(name);
+      return col == null ? null : children.get(col);
+    }
+  }
+
+  private class Cells extends AbstractList<TDNode> implements RandomAccess {
+    private final Row parent;
+    private final int row;
+
+    Cells(Row parent, int row) {
+      this.parent = parent;
+      this.row = row;
+    }
+
+    @Override public TDNode get(int col) { return new Cell(parent, keys[col], row, col); }
+    @Override public int size() { return keys.length; }
+  }
+
+  /** A view of value */
+  private class Cell extends TDNode {
+    private final int row;
+    private final int col;
+
+    Cell(TDNode parent, String key, int row, int col) {
+      super(parent, key);
+      this.row = row;
+      this.col = col;
+      columns[col].copyTo(row, this);
+    }
+
+    @Override public TDNode setValue(Object value) {
+      super.setValue(value);
+      columns[col].set(row, this);
+      getParent().invalidate();
+      return this;
+    }
+
+    @Override TDNode setPrimitive(PrimitiveType type, long bits) {
+      super.setPrimitive(type, bits);
+      columns[col].set(row, this);
+      getParent().invalidate();
+      return this;
+    }
+  }
+
+  /** Values of a key. It's stored in a primitive array if all the values are the same primitive type */
+  private static class Column {
+    enum Kind { INT, LONG, DOUBLE, BOOLEAN, OBJECT }
+    private Kind kind;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private boolean[] booleans;
+    private Object[] objects;
+
+    Column(Kind kind, int capacity) {
+      this.kind = kind;
+      switch (kind) {
+        case INT: ints = new int[capacity]; break;
+        case LONG: longs = new long[capacity]; break;
+        case DOUBLE: doubles = new double[capacity]; break;
+        case BOOLEAN: booleans = new boolean[capacity]; break;
+        default: objects = new Object[capacity];
+      }
+    }
+
+    static Kind kindOf(TDNode node) {
+      if (node.primitiveType == null)
+        return kindOf(node.value);
+      switch (node.primitiveType) {
+        case INT: return Kind.INT;
+        case LONG: return Kind.LONG;
+        case DOUBLE: return Kind.DOUBLE;
+        default: return Kind.BOOLEAN;
+      }
+    }
+
+    static Kind kindOf(Object value) {
+      if (value instanceof Integer) return Kind.INT;
+      if (value instanceof Long) return Kind.LONG;
+      if (value instanceof Double) return Kind.DOUBLE;
+      if (value instanceof Boolean) return Kind.BOOLEAN;
+      return Kind.OBJECT;
+    }
+
+    Object get(int i) {
+      switch (kind) {
+        case INT: return ints[i];
+        case LONG: return longs[i];
+        case DOUBLE: return doubles[i];
+        case BOOLEAN: return booleans[i];
+        default: return objects[i];
+      }
+    }
+
+    /** Set the value of the node, primitive value is copied without boxing */
+    void set(int i, TDNode node) {
+      if (kind != Kind.OBJECT && kindOf(node) != kind)
+        toObjects();
+      switch (kind) {
+        case INT: ints[i] = (int) node.getLongValue(); break;
+        case LONG: longs[i] = node.getLongValue(); break;
+        case DOUBLE: doubles[i] = node.getDoubleValue(); break;
+        case BOOLEAN: booleans[i] = Boolean.TRUE.equals(node.getValue()); break;
+        default: objects[i] = node.getValue();
+      }
+    }
+
+    void copyTo(int i, TDNode node) {
+      switch (kind) {
+        case INT: node.primitiveType = TDNode.PrimitiveType.INT; node.primitive = ints[i]; break;
+        case LONG: node.primitiveType = TDNode.PrimitiveType.LONG; node.primitive = longs[i]; break;
+        case DOUBLE:
+          node.primitiveType = TDNode.PrimitiveType.DOUBLE;
+          node.primitive = Double.doubleToLongBits(doubles[i]);
+          break;
+        case BOOLEAN: node.primitiveType = TDNode.PrimitiveType.BOOLEAN; node.primitive = booleans[i] ? 1 : 0; break;
+        default: node.value = objects[i];
+      }
+    }
+
+    void grow(int capacity) {
+      switch (kind) {
+        case INT: ints = Arrays.copyOf(ints, capacity); break;
+        case LONG: longs = Arrays.copyOf(longs, capacity); break;
+        case DOUBLE: doubles = Arrays.copyOf(doubles, capacity); break;
+        case BOOLEAN: booleans = Arrays.copyOf(booleans, capacity); break;
+        default: objects = Arrays.copyOf(objects, capacity);
+      }
+    }
+
+    /** Fall back to boxed values when a value of different type is added */
+    private void toObjects() {
+      int capacity = kind == Kind.INT ? ints.length : kind == Kind.LONG ? longs.length
+          : kind == Kind.DOUBLE ? doubles.length : booleans.length;
+      Object[] result = new Object[capacity];
+      for (int i = 0; i < capacity; i++)
+        result[i] = get(i);
+      objects = result;
+      ints = null;
+      longs = null;
+      doubles = null;
+      booleans = null;
+      kind = Kind.OBJECT;
+    }
+  }
+}
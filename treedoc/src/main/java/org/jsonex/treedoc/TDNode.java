@@ -14,18 +14,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.jsonex.core.charsource.Bookmark;
-import org.jsonex.core.type.Lazy;
 import org.jsonex.core.util.ListUtil;
 import org.jsonex.core.util.StringUtil;
 import org.jsonex.treedoc.TDPath.Part;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 
 import static org.jsonex.core.util.LangUtil.orElse;
-import static org.jsonex.core.util.ListUtil.last;
 
 /** A Node in TreeDoc */
 @RequiredArgsConstructor
@@ -36,35 +39,173 @@ public class TDNode {
   public final static String REF_KEY = "$ref";
 
   public enum Type { MAP, ARRAY, SIMPLE }
+  /** Type of value stored in {@link #primitive} without boxing */
+  enum PrimitiveType { INT, LONG, DOUBLE, BOOLEAN }
+  /** Children lookup by key uses hash index once the number of children is more than this */
+  private final static int INDEX_THRESHOLD = 32;
   @Getter TreeDoc doc;
   @Getter @Setter TDNode parent;
   @Getter @Setter Type type = Type.SIMPLE;
   /** The key of the node, null for root */
   @Getter String key;
-  /** The value of the node, only available for leave node */
-  @Getter Object value;
+  /** The value of the node, only available for leave node. It's null if the value is stored as primitive */
+  Object value;
+  /** Not null if the value is a primitive stored in {@link #primitive} */
+  PrimitiveType primitiveType;
+  /** Raw bits of the primitive value, boolean is stored as 0 or 1, double is stored with Double.doubleToLongBits() */
+  long primitive;
   /** Children of node. Use List instead of Map to avoid performance overhead of HashMap for small number of elements */
   @Getter List<TDNode> children;
-  /** Start position in the source */
+  /** Start position in the source, null if the parser doesn't track position */
   @Getter @Setter Bookmark start;
-  /** Length of this node in the source */
+  /** Length of this node in the source, null if the parser doesn't track position */
   @Getter @Setter Bookmark end;
   /** indicate this node is a deduped Array node for textproto which allows duplicated keys */
   transient private boolean deduped;
-  transient private final Lazy<Integer> hash = new Lazy<>();
-  transient private final Lazy<String> str = new Lazy<>();
+  /** Store children in {@link ColumnarArray} while they are homogeneous, see {@link #columnarize()} */
+  private boolean columnar;
+  // Caches are plain fields instead of Lazy objects to save memory per node, 0 or null means not computed.
+  // Racy computation is benign as the values are immutable and the same
+  transient private int hash;
+  transient private String str;
+  /**
+   * If the caches of this node or its ancestors may depend on this node. It's always true if it's true for the parent,
+   * so {@link #touch()} can stop at the first node that is false, instead of walking up to the root for each change
+   */
+  transient private boolean cached;
+  /** Only allocated for node with many children, see {@link #indexOf(String)} */
+  transient private ChildIndex childIndex;
+
+  /**
+   * Index of key to the position of the first child with the key. It's kept in sync with addChild() and setKey() of
+   * children, and rebuilt if the children list is structurally changed without TDNode methods
+   */
+  private static class ChildIndex {
+    final Map<String, Integer> map;
+    /** {@link #modCount(List)} of the children when the index is last synced */
+    int modCount;
+    boolean hasDuplicatedKeys;
+
+    ChildIndex(List<TDNode> children) {
+      map = new HashMap<>(children.size() * 2);
+      for (int i = 0; i < children.size(); i++)
+        add(children.get(i).key, i);
+      modCount = modCount(children);
+    }
+
+    void add(String key, int idx) {
+      if (map.putIfAbsent(key, idx) != null)
+        hasDuplicatedKeys = true;
+    }
+  }
+
+  /** Children list of TDNode, it exposes modCount so that the child index can detect the changes from getChildren() */
+  static class ChildList extends ArrayList<TDNode> {
+    ChildList() {}
+    ChildList(int initialCapacity) { super(initialCapacity); }
+    int getModCount() { return modCount; }
+
+    /** ArrayList.set() doesn't change modCount, but it may change the key at the index */
+    @Override public TDNode set(int index, TDNode element) {
+      modCount++;
+      return super.set(index, element);
+    }
+  }
+
+  /** For other lists, e.g. {@link ColumnarArray}, size is used which doesn't detect the changes keeping the size */
+  private static int modCount(List<TDNode> children) {
+    return children instanceof ChildList ? ((ChildList) children).getModCount() : children.size();
+  }
+
+  /** A container on the explicit stack of the non-recursive traversals */
+  @RequiredArgsConstructor
+  private static class Frame {
+    final TDNode node;
+    /** Index of the next child to visit */
+    int next;
+    /** Hash of the visited children, same as List.hashCode() */
+    int childrenHash = 1;
+    boolean pendingSeparator;
+  }
 
-  public TDNode(TDNode parent, String key) { this.doc = parent.doc; this.parent = parent; this.key = key; }
+  public TDNode(TDNode parent, String key) {
+    this.doc = parent.doc;
+    this.parent = parent;
+    this.key = key;
+    this.cached = parent.cached;
+  }
   public TDNode(TreeDoc doc, String key) { this.doc = doc; this.key = key; }
 
   public TDNode cloneOfSimpleType(Object value) { return new TDNode(parent, key).setType(Type.SIMPLE).setValue(value); }
 
-  public TDNode setKey(String key) {  this.key = key; return touch(); }
-  public TDNode setValue(Object value) { this.value = value; return touch(); }
+  public TDNode setKey(String key) {
+    if (parent != null)
+      parent.updateChildIndex(this, this.key, key);
+    this.key = key;
+    return touch();
+  }
+  public TDNode setValue(Object value) {
+    this.value = value;
+    primitiveType = null;
+    return touch();
+  }
+
+  /** Primitive values are stored without boxing, they are boxed when accessed with {@link #getValue()} */
+  public TDNode setIntValue(int value) { return setPrimitive(PrimitiveType.INT, value); }
+  public TDNode setLongValue(long value) { return setPrimitive(PrimitiveType.LONG, value); }
+  public TDNode setDoubleValue(double value) { return setPrimitive(PrimitiveType.DOUBLE, Double.doubleToLongBits(value)); }
+  public TDNode setBooleanValue(boolean value) { return setPrimitive(PrimitiveType.BOOLEAN, value ? 1 : 0); }
+
+  TDNode setPrimitive(PrimitiveType type, long bits) {
+    value = null;
+    primitiveType = type;
+    primitive = bits;
+    return touch();
+  }
+
+  /** The value of the node, only available for leave node. Primitive value is boxed for each call */
+  public Object getValue() {
+    if (primitiveType == null)
+      return value;
+    switch (primitiveType) {
+      case INT: return (int) primitive;
+      case LONG: return primitive;
+      case DOUBLE: return Double.longBitsToDouble(primitive);
+      default: return primitive != 0;
+    }
+  }
+
+  public boolean isNumber() {
+    return primitiveType == null ? value instanceof Number : primitiveType != PrimitiveType.BOOLEAN;
+  }
+
+  /** @throws IllegalStateException if the value is not a number */
+  public long getLongValue() {
+    if (primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.LONG)
+      return primitive;
+    if (primitiveType == PrimitiveType.DOUBLE)
+      return (long) Double.longBitsToDouble(primitive);
+    if (primitiveType == null && value instanceof Number)
+      return ((Number) value).longValue();
+    throw new IllegalStateException("Value is not a number: " + getValue());
+  }
+
+  /** @throws IllegalStateException if the value is not a number */
+  public double getDoubleValue() {
+    if (primitiveType == PrimitiveType.DOUBLE)
+      return Double.longBitsToDouble(primitive);
+    if (primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.LONG)
+      return primitive;
+    if (primitiveType == null && value instanceof Number)
+      return ((Number) value).doubleValue();
+    throw new IllegalStateException("Value is not a number: " + getValue());
+  }
 
   // Create a child node for array
   public TDNode createChild() { return createChild(null); }
   public TDNode createChild(String name) {
+    if (children instanceof ColumnarArray)
+      materialize();  // The child is filled after it's added, so it can't be stored in columns
     int childIndex = indexOf(name);
     if (childIndex < 0) {
       TDNode cn = new TDNode(doc, name);
@@ -77,7 +218,7 @@ public class TDNode {
     if (!existNode.deduped) {
       TDNode listNode = new TDNode(this, name).setType(Type.ARRAY);
       listNode.deduped = true;
-      this.children.set(childIndex, listNode);
+      setChildWithSameKey(childIndex, listNode);
       existNode.key = "0";
       listNode.addChild(existNode);
       listNode.start = existNode.start;  // Reuse first node's start and length
@@ -88,17 +229,59 @@ public class TDNode {
     return existNode.createChild();
   }
 
+  /** If the children are columnar, the node is copied into the columns and shouldn't be changed after added */
   public TDNode addChild(TDNode node) {
     if (children == null)
-      children = new ArrayList<>();
+      children = columnar ? new ColumnarArray(this) : new ChildList();
     node.parent = this;
     node.doc = doc;
     if (node.key == null)  // Assume it's array element
       node.key = "" + getChildrenSize();
+    if (children instanceof ColumnarArray) {
+      if (((ColumnarArray) children).append(node))
+        return touch();
+      materialize();  // Not homogeneous
+    }
+    int modCount = modCount(children);
     children.add(node);
+    if (childIndex != null && childIndex.modCount == modCount) {  // Otherwise, it's stale and will be rebuilt
+      childIndex.add(node.key, children.size() - 1);
+      childIndex.modCount = modCount(children);
+    }
     return touch();
   }
 
+  /**
+   * Store the children of this array node column-wise to save memory, if they are all simple values or flat records
+   * with the same keys, e.g. rows of a CSV. Children added later are stored in the columns as long as they have the same
+   * shape, otherwise the children are converted back to normal nodes. As the children are created as views on access,
+   * they are not identical across calls, and don't have start and end positions.
+   */
+  public TDNode columnarize() {
+    if (type == Type.MAP || children instanceof ColumnarArray)
+      return this;
+    columnar = true;
+    if (children == null || children.isEmpty())
+      return this;
+    ColumnarArray columns = new ColumnarArray(this);
+    for (TDNode cn : children)
+      if (!columns.append(cn)) {
+        columnar = false;
+        return this;
+      }
+    children = columns;
+    childIndex = null;
+    return touch();
+  }
+
+  public boolean isColumnar() { return children instanceof ColumnarArray; }
+
+  private void materialize() {
+    children = ((ColumnarArray) children).toNodes();
+    columnar = false;
+    childIndex = null;
+  }
+
   public void swapWith(TDNode to) {
     if (this.parent == null || to.parent == null)
       throw new IllegalArgumentException("Can't swap root node");
@@ -107,16 +290,27 @@ public class TDNode {
     if (idx1 < 0 || idx2 < 0)
       throw new IllegalArgumentException("Note is not attached to it's parent:idx1=" + idx1 + "; idx2=" + idx2);
 
+    // Keys stay at the same positions after swap, so the child indexes of the parents are not affected
     TDNode toParent = to.parent;
     String toKey = to.key;
 
-    parent.children.set(idx1, to);
+    parent.setChildWithSameKey(idx1, to);
     to.parent = parent;
     to.key = key;
 
-    toParent.children.set(idx2, this);
+    toParent.setChildWithSameKey(idx2, this);
     parent = toParent;
     key = toKey;
+    parent.touch();
+    to.parent.touch();
+  }
+
+  /** Replace the child with a node which will have the same key, so the child index is still in sync */
+  private void setChildWithSameKey(int idx, TDNode node) {
+    boolean synced = childIndex != null && childIndex.modCount == modCount(children);
+    children.set(idx, node);
+    if (synced)
+      childIndex.modCount = modCount(children);
   }
 
   public TDNode getChild(String name) {
@@ -125,7 +319,42 @@ public class TDNode {
   }
 
   int indexOf(TDNode node) { return ListUtil.indexOf(children, n -> n == node); }
-  int indexOf(String name) { return ListUtil.indexOf(children, n -> n.getKey().equals(name)); }
+  int indexOf(String name) {
+    if (name == null || children == null)  // Child key is never null
+      return -1;
+    if (children.size() <= INDEX_THRESHOLD)
+      return ListUtil.indexOf(children, n -> n.getKey().equals(name));
+
+    if (childIndex == null || childIndex.modCount != modCount(children))
+      childIndex = new ChildIndex(children);
+    Integer idx = childIndex.map.get(name);
+    if (idx == null)
+      return -1;
+    if (children.get(idx).key.equals(name))
+      return idx;
+    childIndex = new ChildIndex(children);  // Children list is changed directly, the index is stale
+    idx = childIndex.map.get(name);
+    return idx == null ? -1 : idx;
+  }
+
+  private void updateChildIndex(TDNode child, String oldKey, String newKey) {
+    if (childIndex == null)
+      return;
+    if (childIndex.hasDuplicatedKeys) {  // Not able to tell which child has the key after change, rebuild when needed
+      childIndex = null;
+      return;
+    }
+    Integer idx = childIndex.map.get(oldKey);
+    if (idx == null || idx >= children.size() || children.get(idx) != child)
+      return;  // The child is not attached to this parent
+    childIndex.map.remove(oldKey);
+    Integer existing = childIndex.map.get(newKey);
+    if (existing == null || existing > idx)
+      childIndex.map.put(newKey, idx);
+    if (existing != null)
+      childIndex.hasDuplicatedKeys = true;
+  }
+
   int index() { return parent == null ? 0 : parent.indexOf(this); }
 
   public Object getChildValue(String name) {
@@ -180,10 +409,16 @@ public class TDNode {
     return result;
   }
 
+  /** Visit the nodes in pre-order, it's not recursive, so it works for very deep trees */
   public TDNode foreach(Consumer<? super TDNode> action) {
-    action.accept(this);
-    if (hasChildren())
-      children.forEach(n -> n.foreach(action));
+    Deque<TDNode> stack = new ArrayDeque<>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      TDNode node = stack.pop();
+      action.accept(node);
+      for (int i = node.getChildrenSize() - 1; i >= 0; i--)
+        stack.push(node.children.get(i));
+    }
     return this;
   }
 
@@ -191,31 +426,94 @@ public class TDNode {
 
   public String getPathAsString() { return "/" + StringUtil.join(getPath(), "/"); }
   public List<String> getPath() {
-    if (parent == null)
-      return new ArrayList<>();
-    List<String> result = parent.getPath();
-    result.add(key);
+    List<String> result = new ArrayList<>();
+    for (TDNode node = this; node.parent != null; node = node.parent)
+      result.add(node.key);
+    Collections.reverse(result);
     return result;
   }
 
   public boolean isLeaf() { return getChildrenSize() == 0; }
 
   private TDNode touch() {
-    hash.clear();;
-    str.clear();;
-    if (parent != null)
-      parent.touch();
+    for (TDNode node = this; node != null && node.cached; node = node.parent) {
+      node.hash = 0;
+      node.str = null;
+      node.cached = false;
+    }
     return this;
   }
 
+  /**
+   * Clear the caches of this node and all its ancestors regardless of the cached flag. It's for views such as
+   * {@link ColumnarArray} cells which are created on demand, so their cached flag may be older than the parent's
+   */
+  void invalidate() {
+    for (TDNode node = this; node != null; node = node.parent) {
+      node.hash = 0;
+      node.str = null;
+      node.cached = false;
+    }
+  }
+
   @Override public String toString() {
-    return str.getOrCompute(() -> toString(new StringBuilder(), true, true, 100000).toString());
+    if (str == null)
+      str = toString(new StringBuilder(), true, true, 100000).toString();
+    return str;
   }
 
   public StringBuilder toString(StringBuilder sb, boolean includeRootKey, boolean includeReservedKeys, int limit) {
-    if (parent != null && parent.type == Type.MAP && includeRootKey)
+    Deque<Frame> stack = new ArrayDeque<>();
+    TDNode node = this;
+    boolean includeKey = includeRootKey;
+    while (true) {
+      if (node != null) {  // Start of a node
+        node.appendKeyAndValue(sb, includeKey, limit);
+        if (node.children != null) {
+          sb.append(node.type == Type.ARRAY ? '[' : '{');
+          stack.push(new Frame(node));
+        }
+        node = null;
+        includeKey = true;
+      }
+      if (stack.isEmpty())
+        return sb;
+
+      Frame f = stack.peek();
+      List<TDNode> children = f.node.children;
+      if (f.pendingSeparator) {
+        sb.append(", ");
+        f.pendingSeparator = false;
+      }
+      int size = children.size();
+      int i = f.next;
+      TDNode child = null;
+      for (; i < size; i++) {
+        child = children.get(i);
+        if (includeReservedKeys || child.key == null || !child.key.startsWith("$"))
+          break;
+      }
+      if (i < size && sb.length() > limit) {
+        sb.append("...");
+        i = size;
+      }
+      if (i < size) {
+        f.next = i + 1;
+        f.pendingSeparator = i < size - 1;
+        node = child;
+        continue;
+      }
+      sb.append(f.node.type == Type.ARRAY ? ']' : '}');
+      stack.pop();
+    }
+  }
+
+  private void appendKeyAndValue(StringBuilder sb, boolean includeKey, int limit) {
+    cached = true;  // The nodes not appended don't affect the result
+    if (parent != null && parent.type == Type.MAP && includeKey)
       sb.append(key + ": ");
 
+    Object value = getValue();
     if (value != null) {
       if (!(value instanceof String)) {
         sb.append(value);
@@ -227,38 +525,73 @@ public class TDNode {
         sb.append('\'' + str + '\'');
       }
     }
-
-    if (this.children == null)
-      return sb;
-
-    sb.append(type == Type.ARRAY ? '[' : '{');
-    for (TDNode n : this.children) {
-      if (!includeReservedKeys && n.key != null && n.key.startsWith("$"))
-        continue;
-      if (sb.length() > limit) {
-        sb.append("...");
-        break;
-      }
-      n.toString(sb, true, includeReservedKeys, limit);
-      if (n != last(this.children).get())
-        sb.append(", ");
-    }
-    sb.append(type == Type.ARRAY ? ']' : '}');
-    return sb;
   }
 
   @Override public boolean equals(Object o) {
     if (this == o)
       return true;
 
-    if (o == null || getClass() != o.getClass())
+    if (!(o instanceof TDNode))  // Columnar children are views of subclasses
       return false;
 
-    TDNode tdNode = (TDNode) o;
-    return Objects.equals(key, tdNode.key) && Objects.equals(value, tdNode.value) && Objects.equals(children, tdNode.children);
+    Deque<TDNode> stack = new ArrayDeque<>();  // Pairs of nodes to compare
+    stack.push(this);
+    stack.push((TDNode) o);
+    while (!stack.isEmpty()) {
+      TDNode n2 = stack.pop();
+      TDNode n1 = stack.pop();
+      if (n1 == n2)
+        continue;
+      if (!Objects.equals(n1.key, n2.key) || !n1.valueEquals(n2))
+        return false;
+      if (n1.children == n2.children)
+        continue;
+      if (n1.children == null || n2.children == null)
+        return false;
+      int size = n1.children.size();
+      if (size != n2.children.size())
+        return false;
+      for (int i = size - 1; i >= 0; i--) {
+        stack.push(n1.children.get(i));
+        stack.push(n2.children.get(i));
+      }
+    }
+    return true;
+  }
+
+  private boolean valueEquals(TDNode o) {
+    if (primitiveType != null && o.primitiveType != null)
+      return primitiveType == o.primitiveType && primitive == o.primitive;
+    return Objects.equals(getValue(), o.getValue());
   }
 
+  /** Same as Objects.hash(key, getValue(), children), but computed with explicit stack */
   @Override public int hashCode() {
-    return hash.getOrCompute(() -> Objects.hash(key, value, children));
+    if (hash != 0)
+      return hash;
+
+    Deque<Frame> stack = new ArrayDeque<>();
+    stack.push(new Frame(this));
+    int result = 0;
+    while (!stack.isEmpty()) {
+      Frame f = stack.peek();
+      TDNode node = f.node;
+      if (node.children != null && f.next < node.children.size()) {
+        TDNode child = node.children.get(f.next++);
+        if (child.hash != 0)
+          f.childrenHash = 31 * f.childrenHash + child.hash;
+        else
+          stack.push(new Frame(child));
+        continue;
+      }
+
+      stack.pop();
+      result = 31 * (31 + Objects.hashCode(node.key)) + Objects.hashCode(node.getValue());
+      result = node.hash = 31 * result + (node.children == null ? 0 : f.childrenHash);
+      node.cached = true;
+      if (!stack.isEmpty())
+        stack.peek().childrenHash = 31 * stack.peek().childrenHash + result;
+    }
+    return result;
   }
 }
@@ -1,25 +1,30 @@
 package org.jsonex.treedoc;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.jsonex.core.util.LangUtil.doIfNotNull;
 import static org.jsonex.core.util.ListUtil.mapKeys;
 
-@Accessors(chain = true) @Setter @Getter @RequiredArgsConstructor
+@Accessors(chain = true) @Setter @Getter
 public class TreeDoc {
-  final Map<String, TDNode> idMap = new HashMap<>();
+  final Map<String, TDNode> idMap;
   final URI uri;
   TDNode root = new TDNode(this, "root");
 
   public TreeDoc() { this(null); }
+  public TreeDoc(URI uri) { this(uri, new HashMap<>()); }
+  private TreeDoc(URI uri, Map<String, TDNode> idMap) {
+    this.uri = uri;
+    this.idMap = idMap;
+  }
 
   public TreeDoc(URI uri, String rootKey) {
     this (uri);
@@ -32,6 +37,13 @@ public class TreeDoc {
     return result;
   }
 
+  /** Array TreeDoc with synchronized idMap, so that the child documents can be parsed concurrently */
+  public static TreeDoc ofConcurrentArray() {
+    TreeDoc result = new TreeDoc(null, Collections.synchronizedMap(new HashMap<>()));
+    result.root.setType(TDNode.Type.ARRAY);
+    return result;
+  }
+
   /** Retrain only the sub-tree under the input node. */
   public TreeDoc retain(TDNode node) {
     node.setKey(this.root.getKey());
@@ -55,8 +67,8 @@ public class TreeDoc {
       result.idMap.putAll(mapKeys(node.doc.idMap, k -> k + "_" + lId));
       node.foreach(n -> {
         n.doc = result;
-        doIfNotNull(n.getChild(TDNode.REF_KEY), nRef -> nRef.value += "_" + lId);
-        doIfNotNull(n.getChild(TDNode.ID_KEY), nRef -> nRef.value += "_" + lId);
+        doIfNotNull(n.getChild(TDNode.REF_KEY), nRef -> nRef.setValue(nRef.getValue() + "_" + lId));
+        doIfNotNull(n.getChild(TDNode.ID_KEY), nRef -> nRef.setValue(nRef.getValue() + "_" + lId));
       });
       result.root.addChild(node);
       docId ++;
@@ -0,0 +1,165 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.treedoc.json;
+
+import lombok.SneakyThrows;
+import org.jsonex.treedoc.TDNode;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Write a {@link TDNode} tree as JSON in chunks, the output is the same as {@link TDJSONWriter}. Each call of
+ * {@link #next()} resumes from where the last chunk ends, so a large tree can be streamed with a bounded buffer, and the
+ * caller controls the pace, e.g. only pull the next chunk when the client is ready to receive.
+ *
+ * <p>A chunk is at least chunkSize chars except the last one, it can be longer by one token, e.g. a long string value.
+ * The tree shouldn't be changed until all the chunks are written. It's not thread safe.
+ *
+ * <p>It's not recursive, it's also used by {@link TDJSONWriter} to write very deep trees.
+ */
+public class TDJSONChunkWriter implements Iterator<String> {
+  private final TDJSONWriter writer;
+  private final TDJSONOption opt;
+  private final TDJSONWriterPlan plan;
+  private final int chunkSize;
+  /** Buffer of the chunk, null if it writes to out directly */
+  private final StringBuilder buf;
+  private final Appendable out;
+  /** Indent and depth of the root node */
+  private final String baseIndent;
+  private final int baseDepth;
+
+  private TDNode root;
+  private boolean started;
+  // The stack of the containers being written, index is the depth
+  private TDNode[] nodes = new TDNode[16];
+  /** Index of the next child to write */
+  private int[] childIndex = new int[16];
+  /** If value deliminator should be written before next child */
+  private boolean[] pendingDeliminator = new boolean[16];
+  private int depth = -1;
+
+  public TDJSONChunkWriter(TDNode node, TDJSONOption opt, int chunkSize) {
+    this(TDJSONWriter.get(), null, node, opt, opt.writerPlan(), "", 0, Math.max(chunkSize, 1));
+  }
+
+  /** Writer of the whole tree to out, used by TDJSONWriter */
+  TDJSONChunkWriter(TDJSONWriter writer, Appendable out, TDNode node, TDJSONOption opt, TDJSONWriterPlan plan,
+      String baseIndent, int baseDepth) {
+    this(writer, out, node, opt, plan, baseIndent, baseDepth, Integer.MAX_VALUE);
+  }
+
+  private TDJSONChunkWriter(TDJSONWriter writer, Appendable out, TDNode node, TDJSONOption opt, TDJSONWriterPlan plan,
+      String baseIndent, int baseDepth, int chunkSize) {
+    this.writer = writer;
+    this.root = node;
+    this.opt = opt;
+    this.plan = plan;
+    this.chunkSize = chunkSize;
+    this.buf = out == null ? new StringBuilder(chunkSize + 16) : null;
+    this.out = out == null ? buf : out;
+    this.baseIndent = baseIndent;
+    this.baseDepth = baseDepth;
+  }
+
+  /** Write all the remaining output to out */
+  void writeAll() {
+    if (!started) {
+      started = true;
+      writeValue(root);
+      root = null;
+    }
+    while (depth >= 0)
+      writeNextChild();
+  }
+
+  @Override public boolean hasNext() { return !started || depth >= 0; }
+
+  @Override public String next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    buf.setLength(0);
+    if (!started) {
+      started = true;
+      writeValue(root);
+      root = null;
+    }
+    while (buf.length() < chunkSize && depth >= 0)
+      writeNextChild();
+    return buf.toString();
+  }
+
+  /** Write the next child of the container on top of the stack, or end it if all the children are written */
+  @SneakyThrows
+  private void writeNextChild() {
+    TDNode node = nodes[depth];
+    int size = node.getChildrenSize();
+    boolean isMap = node.getType() == TDNode.Type.MAP;
+    if (pendingDeliminator[depth]) {
+      out.append(plan.valueSeparator);
+      pendingDeliminator[depth] = false;
+    }
+
+    for (int i = childIndex[depth]; i < size; i++) {
+      TDNode cn = isMap ? opt.applyFilters(node.getChild(i)) : node.getChild(i);
+      if (cn == null)
+        continue;
+
+      childIndex[depth] = i + 1;
+      pendingDeliminator[depth] = i < size - 1;  // No need "," for last entry
+      if (plan.hasIndent)
+        out.append('\n').append(indent(depth + 1));
+      if (isMap) {
+        writer.writeKey(out, cn.getKey(), opt);
+        out.append(plan.keySeparator);
+      }
+      writeValue(cn);
+      return;
+    }
+
+    if (plan.hasIndent && node.hasChildren())
+      out.append('\n').append(indent(depth));
+    out.append(isMap ? plan.mapEnd : plan.arrayEnd);
+    nodes[depth--] = null;
+  }
+
+  /** Write a simple value, or start a container and push it to the stack */
+  @SneakyThrows
+  private void writeValue(TDNode node) {
+    if (node == null) {
+      out.append(plan.nullValue);
+      return;
+    }
+    switch (node.getType()) {
+      case MAP: out.append(plan.mapStart); push(node); break;
+      case ARRAY: out.append(plan.arrayStart); push(node); break;
+      default: writer.writeSimple(out, node, opt);
+    }
+  }
+
+  /** @param level 0 is the root node */
+  private String indent(int level) {
+    String indent = plan.indent(baseDepth + level);
+    return baseIndent.isEmpty() ? indent : baseIndent + indent;
+  }
+
+  private void push(TDNode node) {
+    if (++depth == nodes.length) {
+      nodes = Arrays.copyOf(nodes, depth * 2);
+      childIndex = Arrays.copyOf(childIndex, depth * 2);
+      pendingDeliminator = Arrays.copyOf(pendingDeliminator, depth * 2);
+    }
+    nodes[depth] = node;
+    childIndex[depth] = 0;
+    pendingDeliminator[depth] = false;
+  }
+}
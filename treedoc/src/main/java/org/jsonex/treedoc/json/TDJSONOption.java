@@ -1,7 +1,13 @@
 package org.jsonex.treedoc.json;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.experimental.Accessors;
+import org.jsonex.core.util.StringPool;
 import org.jsonex.treedoc.TDNode;
 
 import java.net.URI;
@@ -31,6 +37,17 @@ public class TDJSONOption {
   // Used for JSONParser
   /** In case there's no enclosed '[' of '{' on the root level, the default type. */
   TDNode.Type defaultRootType = TDNode.Type.SIMPLE;
+  /** If false, start and end Bookmark won't be set in the nodes to save memory and allocations for large documents */
+  boolean trackPosition = true;
+  /** Store arrays of simple values or flat records with the same keys column-wise, see {@link TDNode#columnarize()} */
+  boolean columnarArrays;
+  /**
+   * Pool to dedupe keys, so that records with the same keys share the key Strings. It can be shared by multiple parses
+   * and threads. Keys are not deduped if it's null
+   */
+  StringPool keyPool;
+  /** Max nesting depth of MAP and ARRAY, parser fails with ParseRuntimeException once it's exceeded */
+  int maxDepth = Integer.MAX_VALUE;
 
   // Used for JSONWriter
   int indentFactor;
@@ -38,6 +55,8 @@ public class TDJSONOption {
   char quoteChar = '"';
   String indentStr = "";
   BiFunction<String, TextType, String> textDecorator;
+  @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) @ToString.Exclude @EqualsAndHashCode.Exclude
+  private transient TDJSONWriterPlan writerPlan;
 
   /**
    * if this is set, all the id in $id and $ref will be suffixed with "_" + docId, this is to avoid collision when merge
@@ -66,6 +85,8 @@ public class TDJSONOption {
   public TDJSONOption setDeliminatorValue(String val) { deliminatorValue = val; buildTerms(); return this; }
 
   public TDNode applyFilters(TDNode n) {
+    if (nodeFilters.isEmpty())
+      return n;
     for (NodeFilter f : nodeFilters) {
       if (n == null)
         break;
@@ -80,6 +101,14 @@ public class TDJSONOption {
     return this;
   }
 
+  /** The compiled writer settings, it's rebuilt if any of the related options is changed */
+  TDJSONWriterPlan writerPlan() {
+    TDJSONWriterPlan plan = writerPlan;
+    if (plan == null || !plan.matches(this))
+      writerPlan = plan = new TDJSONWriterPlan(this);
+    return plan;
+  }
+
   // Helper methods for deco text
   public String deco(String text, TextType type) {
     return textDecorator == null ? text : textDecorator.apply(text, type);
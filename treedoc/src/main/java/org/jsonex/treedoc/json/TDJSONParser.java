@@ -9,18 +9,29 @@
 
 package org.jsonex.treedoc.json;
 
+import lombok.RequiredArgsConstructor;
 import org.jsonex.core.charsource.ArrayCharSource;
+import org.jsonex.core.charsource.Bookmark;
 import org.jsonex.core.charsource.CharSource;
 import org.jsonex.core.charsource.ReaderCharSource;
 import org.jsonex.core.factory.InjectableInstance;
-import org.jsonex.core.util.ClassUtil;
 import org.jsonex.treedoc.TDNode;
 import org.jsonex.treedoc.TreeDoc;
 
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class TDJSONParser {
   private final static char EOF = '\uFFFF';
+  private final static int PARALLEL_CHUNK_SIZE = 1 << 20;
+  private final static String BLANK_CHARS = " \r\t\u00a0,";
   public final static InjectableInstance<TDJSONParser> instance = InjectableInstance.of(TDJSONParser.class);
   public static TDJSONParser get() { return instance.get(); }
 
@@ -41,41 +52,178 @@ public class TDJSONParser {
     TreeDoc doc = TreeDoc.ofArray();
     int docId = 0;
     while(src.skipSpacesAndReturnsAndCommas())
-      TDJSONParser.get().parse(src, new TDJSONOption().setDocId(docId++), doc.getRoot().createChild());
+      TDJSONParser.get().parse(src, docOption(opt, docId++), doc.getRoot().createChild());
     return doc.getRoot();
   }
 
+  public TDNode parseAllParallel(CharSource src, TDJSONOption opt) {
+    return parseAllParallel(src, opt, ForkJoinPool.commonPool());
+  }
+  /**
+   * Parallel version of {@link #parseAll(CharSource, TDJSONOption)} for JSONL input, i.e. one JSON document per line.
+   * The input is split into chunks at line breaks, the documents of each chunk are counted and then parsed with the
+   * executor. The result is the same as parseAll(), including the order of documents and the docId suffix of $id and
+   * $ref. Unlike parseAll(), the source is not consumed.
+   *
+   * <p>If the source doesn't support split (e.g. ReaderCharSource), it falls back to parseAll() which consumes the
+   * source.
+   */
+  public TDNode parseAllParallel(CharSource src, TDJSONOption opt, Executor executor) {
+    return parseAllParallel(src, opt, executor, PARALLEL_CHUNK_SIZE);
+  }
+  public TDNode parseAllParallel(CharSource src, TDJSONOption opt, Executor executor, int chunkSize) {
+    List<CharSource> chunks = src.splitLines(chunkSize);
+    if (chunks == null)
+      return parseAll(src, opt);
+    if (chunks.size() <= 1)  // Parse the chunk instead of the source, so that the source is not consumed
+      return chunks.isEmpty() ? TreeDoc.ofArray().getRoot()
+          : parseAll(chunks.get(0).setBookmarkBase(src.getBookmark()), opt);
+
+    List<CompletableFuture<ChunkInfo>> infoFutures = new ArrayList<>();
+    for (CharSource chunk : chunks)
+      infoFutures.add(CompletableFuture.supplyAsync(() -> countDocs(chunk), executor));
+
+    // Split again as the chunks are consumed by counting, the split is cheap as it only looks for the chunk ends
+    chunks = src.splitLines(chunkSize);
+    TreeDoc doc = TreeDoc.ofConcurrentArray();
+    List<CompletableFuture<List<TDNode>>> nodeFutures = new ArrayList<>();
+    Bookmark base = src.getBookmark();
+    int docId = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      ChunkInfo info = join(infoFutures.get(i));
+      CharSource chunk = chunks.get(i).setBookmarkBase(base);
+      int startDocId = docId;
+      nodeFutures.add(CompletableFuture.supplyAsync(() -> parseChunk(chunk, opt, doc, startDocId, info.docs), executor));
+      base.append(info.end);  // setBookmarkBase() copies the bookmark, so it can be reused
+      docId += info.docs;
+    }
+
+    for (CompletableFuture<List<TDNode>> f : nodeFutures)
+      for (TDNode node : join(f))
+        doc.getRoot().addChild(node);
+    return doc.getRoot();
+  }
+
+  private static TDJSONOption docOption(TDJSONOption opt, int docId) {
+    return new TDJSONOption().setDocId(docId).setTrackPosition(opt.trackPosition).setMaxDepth(opt.maxDepth)
+        .setKeyPool(opt.keyPool).setColumnarArrays(opt.columnarArrays);
+  }
+
+  @RequiredArgsConstructor
+  private static class ChunkInfo {
+    final int docs;
+    final Bookmark end;
+  }
+
+  private static ChunkInfo countDocs(CharSource src) {
+    int docs = 0;
+    while (src.skipChars(BLANK_CHARS)) {
+      if (src.peek() != '\n') {
+        docs++;
+        if (!src.skipUntil("\n"))
+          break;
+      }
+      src.skip();
+    }
+    return new ChunkInfo(docs, src.getBookmark());
+  }
+
+  private static List<TDNode> parseChunk(CharSource src, TDJSONOption opt, TreeDoc doc, int docId, int expectedDocs) {
+    // Use a detached parent, so that the shared root is not touched concurrently
+    TDNode parent = new TDNode(doc, null).setType(TDNode.Type.ARRAY);
+    List<TDNode> nodes = new ArrayList<>(expectedDocs);
+    while (src.skipSpacesAndReturnsAndCommas()) {
+      TDNode node = new TDNode(parent, null);
+      TDJSONParser.get().parse(src, docOption(opt, docId + nodes.size()), node);
+      nodes.add(node);
+    }
+    if (nodes.size() != expectedDocs)
+      throw src.createParseRuntimeException(
+          "Each line should contain exactly one document for parallel parsing: expected=" + expectedDocs + "; actual=" + nodes.size());
+    return nodes;
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
   public TDNode parse(CharSource src, TDJSONOption opt, TDNode node) { return parse(src, opt, node, true); }
 
+  /**
+   * Parse the value into the node. It's not recursive, the containers being parsed are kept in an explicit stack, so
+   * the nesting depth is only limited by {@link TDJSONOption#maxDepth}
+   */
   public TDNode parse(CharSource src, TDJSONOption opt, TDNode node, boolean isRoot) {
-    char c = skipSpaceAndComments(src);
-    if (c == EOF)
+    Deque<Frame> stack = new ArrayDeque<>();
+    StringBuilder keyBuf = opt.keyPool == null ? null : new StringBuilder();
+    if (!startValue(src, opt, node, isRoot, stack))
       return node;
 
-    node.setStart(src.getBookmark());
-    try {
-      if (c == '{')
-        return parseMap(src, opt, node, true);
-
-      if (c == '[')
-        return parseArray(src, opt, node, true);
-
-      if (isRoot) {
-        switch (opt.defaultRootType) {
-          case MAP:
-            return parseMap(src, opt, node, false);
-          case ARRAY:
-            return parseArray(src, opt, node, false);
-          default:;
-        }
+    while (!stack.isEmpty()) {
+      Frame f = stack.peek();
+      TDNode child = f.node.getType() == TDNode.Type.MAP
+          ? nextMapChild(src, opt, f, keyBuf) : nextArrayChild(src, opt, f);
+      if (child != null) {
+        if (!startValue(src, opt, child, false, stack))
+          afterChild(src, opt, f, child);
+        continue;
       }
 
+      stack.pop();  // End of the container
+      if (opt.trackPosition)
+        f.node.setEnd(src.getBookmark());
+      if (!stack.isEmpty())
+        afterChild(src, opt, stack.peek(), f.node);
+    }
+    return node;
+  }
+
+  /** A MAP or ARRAY node being parsed */
+  @RequiredArgsConstructor
+  private static class Frame {
+    final TDNode node;
+    final boolean withStartBracket;
+    /** Index for the map entries without value, they are considered as indexed value */
+    int index;
+    /** If the current child of the array is not added yet as it's for columnar array */
+    boolean detachedChild;
+  }
+
+  /**
+   * Parse the simple value or start the container. The container is pushed to the stack, and its children are parsed
+   * by the caller.
+   *
+   * @return true if a container is started
+   */
+  private static boolean startValue(CharSource src, TDJSONOption opt, TDNode node, boolean isRoot, Deque<Frame> stack) {
+    char c = skipSpaceAndComments(src);
+    if (c == EOF)
+      return false;
+
+    if (opt.trackPosition)
+      node.setStart(src.getBookmark());
+
+    if (c == '{')
+      return startContainer(src, opt, node, TDNode.Type.MAP, true, stack);
+    if (c == '[')
+      return startContainer(src, opt, node, TDNode.Type.ARRAY, true, stack);
+    if (isRoot && opt.defaultRootType != TDNode.Type.SIMPLE)
+      return startContainer(src, opt, node, opt.defaultRootType, false, stack);
+
+    try {
       if(c == '"' || c == '\'' || c == '`') {
         src.skip();
         StringBuilder sb = new StringBuilder();
         src.readQuotedString(c, sb);
         readContinuousString(src, sb);
-        return node.setValue(sb.toString());
+        node.setValue(sb.toString());
+        return false;
       }
 
       String term = opt.termValue;
@@ -83,13 +231,79 @@ public class TDJSONParser {
         term = node.getParent().getType() == TDNode.Type.ARRAY ? opt.termValueInArray : opt.termValueInMap;
 
       String str = src.readUntil(term, opt.termValueStrs).trim();
-      return node.setValue(ClassUtil.toSimpleObject(str));
+      setSimpleValue(node, str);
+      return false;
     } finally {
-      node.setEnd(src.getBookmark());
+      if (opt.trackPosition)
+        node.setEnd(src.getBookmark());
     }
   }
 
-  void readContinuousString(CharSource src, StringBuilder sb) {
+  private static boolean startContainer(
+      CharSource src, TDJSONOption opt, TDNode node, TDNode.Type type, boolean withStartBracket, Deque<Frame> stack) {
+    if (stack.size() >= opt.maxDepth)
+      throw src.createParseRuntimeException("Exceeded max depth " + opt.maxDepth + at(node));
+    node.setType(type);
+    if (type == TDNode.Type.ARRAY && opt.columnarArrays)
+      node.columnarize();
+    if (withStartBracket)
+      src.skip();
+    stack.push(new Frame(node, withStartBracket));
+    return true;
+  }
+
+  private static void afterChild(CharSource src, TDJSONOption opt, Frame f, TDNode childNode) {
+    TDNode node = f.node;
+    if (node.getType() == TDNode.Type.ARRAY) {
+      if (f.detachedChild)
+        node.addChild(childNode);  // Columnar children are added after parsed
+      skipSpaceAndComments(src);
+      if (src.startsWith(opt.deliminatorValue))
+        src.skip(opt.deliminatorValue.length());
+      return;
+    }
+
+    String key = childNode.getKey();
+    if (opt.KEY_ID.equals(key) && childNode.getType() == TDNode.Type.SIMPLE) {
+      String id = childNode.getValue().toString();
+      if (opt.getDocId() != null) {
+        id += "_" + opt.getDocId();
+        childNode.setValue(id);
+      }
+      node.getDoc().getIdMap().put(id, node);
+    } else if (TDNode.REF_KEY.equals(key) && childNode.getType() == TDNode.Type.SIMPLE) {
+      if (opt.getDocId() != null)
+        childNode.setValue(childNode.getValue() + "_" + opt.getDocId());
+    }
+    f.index++;
+  }
+
+  /** Same as node.setValue(ClassUtil.toSimpleObject(str)), but numbers and booleans are set without boxing */
+  static TDNode setSimpleValue(TDNode node, String str) {
+    switch (str) {
+      case "null": return node.setValue(null);
+      case "true": return node.setBooleanValue(true);
+      case "false": return node.setBooleanValue(false);
+      default:
+    }
+    boolean isHex = str.startsWith("0x") || str.startsWith("0X");
+    char c = str.isEmpty() ? ' ' : str.charAt(0);
+    if (isHex || c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9')) {
+      try {
+        if (!isHex && str.indexOf('.') >= 0)
+          return node.setDoubleValue(Double.parseDouble(str));
+        long value = Long.parseLong(isHex ? str.substring(2) : str, isHex ? 16 : 10);
+        return value < Integer.MAX_VALUE ? node.setIntValue((int) value) : node.setLongValue(value);
+      } catch (NumberFormatException e) {
+        // Not a number, keep it as String
+      }
+    }
+    return node.setValue(str);
+  }
+
+  private static String at(TDNode node) { return node.getStart() == null ? "" : " at " + node.getStart(); }
+
+  static void readContinuousString(CharSource src, StringBuilder sb) {
     char c;
     while((c = skipSpaceAndComments(src)) != EOF) {
       if ("\"`'".indexOf(c) < 0)
@@ -130,21 +344,20 @@ public class TDJSONParser {
     return EOF;
   }
 
-  TDNode parseMap(CharSource src, TDJSONOption opt, TDNode node, boolean withStartBracket) {
-    node.setType(TDNode.Type.MAP);
-    if (withStartBracket)
-      src.skip();
-    for (int i = 0;;) {
+  /** @return The next child to parse, or null if the end of the map is reached */
+  private static TDNode nextMapChild(CharSource src, TDJSONOption opt, Frame f, StringBuilder keyBuf) {
+    TDNode node = f.node;
+    while (true) {
       char c = skipSpaceAndComments(src);
       if (c == EOF) {
-        if (withStartBracket)
-          throw src.createParseRuntimeException("EOF while expecting matching '}' with '{' at " + node.getStart());
-        break;
+        if (f.withStartBracket)
+          throw src.createParseRuntimeException("EOF while expecting matching '}' with '{'" + at(node));
+        return null;
       }
 
       if (c == '}') {
         src.skip();
-        break;
+        return null;
       }
 
       if (src.startsWith(opt.deliminatorValue)) { // Skip ,
@@ -155,14 +368,14 @@ public class TDJSONParser {
       String key;
       if (c == '"' || c == '\'' || c == '`') {
         src.skip();
-        key = src.readQuotedString(c);
+        key = readQuotedKey(src, c, opt, keyBuf);
         c = skipSpaceAndComments(src);
 //        if (c == EOF)
 //          break;
         if (!src.startsWith(opt.deliminatorKey) && c != '{' && c != '[' && c != ',' && c != '}')
           throw src.createParseRuntimeException("No '" + opt.deliminatorKey + "' after key:" + key);
       } else {
-        key = src.readUntil(opt.termKey, opt.termKeyStrs, 1, Integer.MAX_VALUE).trim();
+        key = readKey(src, opt, keyBuf);
         if (src.isEof())
           throw src.createParseRuntimeException("No '" + opt.deliminatorKey + "' after key:" + key);
         c = src.peek();
@@ -170,50 +383,52 @@ public class TDJSONParser {
       if (src.startsWith(opt.deliminatorKey))
         src.skip(opt.deliminatorKey.length());
 
-      if (src.startsWith(opt.deliminatorValue) || c == '}')  // If there's no ':', we consider it as indexed value (array)
-        node.createChild(i + "").setValue(key);
-      else {
-        TDNode childNode = parse(src, opt, node.createChild(key), false);
-        if (opt.KEY_ID.equals(key) && childNode.getType() == TDNode.Type.SIMPLE) {
-          String id = childNode.getValue().toString();
-          if (opt.getDocId() != null) {
-            id += "_" + opt.getDocId();
-            childNode.setValue(id);
-          }
-          node.getDoc().getIdMap().put(id, node);
-        } else if (TDNode.REF_KEY.equals(key) && childNode.getType() == TDNode.Type.SIMPLE) {
-          if (opt.getDocId() != null)
-            childNode.setValue(childNode.getValue() + "_" + opt.getDocId());
-        }
+      if (src.startsWith(opt.deliminatorValue) || c == '}') {  // If there's no ':', we consider it as indexed value (array)
+        node.createChild(f.index++ + "").setValue(key);
+        continue;
       }
-      i++;
+      return node.createChild(key);
     }
-    return node;
   }
 
-  TDNode parseArray(CharSource src, TDJSONOption opt, TDNode node, boolean withStartBracket) {
-    node.setType(TDNode.Type.ARRAY);
-    if (withStartBracket)
-      src.skip();
-    while (true) {
-      char c = skipSpaceAndComments(src);
-      if (c == EOF) {
-        if (withStartBracket)
-          throw src.createParseRuntimeException("EOF while expecting matching ']' with '[' at " + node.getStart());
-        break;
-      }
+  /** If opt.keyPool is set, the key is read into buf and looked up from the pool without creating a String */
+  static String readQuotedKey(CharSource src, char quote, TDJSONOption opt, StringBuilder buf) {
+    if (opt.keyPool == null)
+      return src.readQuotedString(quote);
+    buf.setLength(0);
+    return opt.keyPool.get(src.readQuotedString(quote, buf));
+  }
 
-      if (c == ']') {
-        src.skip();
-        break;
-      }
+  static String readKey(CharSource src, TDJSONOption opt, StringBuilder buf) {
+    if (opt.keyPool == null)
+      return src.readUntil(opt.termKey, opt.termKeyStrs, 1, Integer.MAX_VALUE).trim();
+    buf.setLength(0);
+    src.readUntil(opt.termKey, opt.termKeyStrs, buf, true, 1, Integer.MAX_VALUE);
+    int start = 0;
+    int end = buf.length();
+    while (start < end && buf.charAt(start) <= ' ')  // Same as String.trim()
+      start++;
+    while (end > start && buf.charAt(end - 1) <= ' ')
+      end--;
+    return opt.keyPool.get(buf, start, end);
+  }
 
-      parse(src, opt, node.createChild(null), false);
-      c = skipSpaceAndComments(src);
-      if (src.startsWith(opt.deliminatorValue)) {
-        src.skip(opt.deliminatorValue.length());
-      }
+  /** @return The next child to parse, or null if the end of the array is reached */
+  private static TDNode nextArrayChild(CharSource src, TDJSONOption opt, Frame f) {
+    TDNode node = f.node;
+    char c = skipSpaceAndComments(src);
+    if (c == EOF) {
+      if (f.withStartBracket)
+        throw src.createParseRuntimeException("EOF while expecting matching ']' with '['" + at(node));
+      return null;
     }
-    return node;
+
+    if (c == ']') {
+      src.skip();
+      return null;
+    }
+
+    f.detachedChild = node.isColumnar() || opt.columnarArrays && !node.hasChildren();
+    return f.detachedChild ? new TDNode(node, null) : node.createChild(null);
   }
 }
@@ -0,0 +1,361 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.treedoc.json;
+
+import lombok.Getter;
+import org.jsonex.core.charsource.ArrayCharSource;
+import org.jsonex.core.charsource.Bookmark;
+import org.jsonex.core.charsource.CharSource;
+import org.jsonex.core.charsource.ReaderCharSource;
+import org.jsonex.core.util.ClassUtil;
+import org.jsonex.treedoc.TDNode;
+
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A pull (StAX style) JSON parser that returns one token at a time without building {@link TDNode}. It accepts the same
+ * lenient syntax as {@link TDJSONParser}: comments, unquoted keys and values, single and back quotes, custom
+ * deliminatorKey and deliminatorValue, and {@link TDJSONOption#defaultRootType} for root without brackets.
+ *
+ * <p>Typical usage:
+ * <pre>
+ *   TDJSONPullParser p = TDJSONPullParser.of(reader, opt);
+ *   for (Token t = p.next(); t != Token.EOF; t = p.next()) {
+ *     if (t == Token.KEY &amp;&amp; !p.getKey().equals("name"))
+ *       p.skip();  // Skip the value without parsing it
+ *   }
+ * </pre>
+ *
+ * <p>Same as TDJSONParser, for map entry without key (e.g. "{a,b}"), a KEY token with the index of the entry is returned.
+ * If {@link TDJSONOption#docId} is set, the value of "$id" and "$ref" will be suffixed with "_" + docId.
+ */
+public class TDJSONPullParser {
+  private final static char EOF_CHAR = '\uFFFF';
+  public enum Token { START_MAP, END_MAP, START_ARRAY, END_ARRAY, KEY, VALUE, EOF }
+
+  private final CharSource src;
+  private final TDJSONOption opt;
+
+  /** The current token */
+  @Getter private Token token;
+  /** The key of current KEY token, or the key of the current value if it's inside a map */
+  @Getter private String key;
+  /** The value of current VALUE token, it's either a String or a simple type converted by ClassUtil.toSimpleObject() */
+  @Getter private Object value;
+  /** The nesting level of containers, it's increased after START_MAP / START_ARRAY and decreased after END_MAP / END_ARRAY */
+  @Getter private int depth;
+  /** The position where current token starts, null if {@link TDJSONOption#trackPosition} is false */
+  @Getter private Bookmark start;
+
+  private boolean[] isMap = new boolean[16];
+  private boolean[] withBracket = new boolean[16];
+  private boolean[] afterElement = new boolean[16];
+  private int[] index = new int[16];
+  private String[] keys = new String[16];
+  private Bookmark[] starts = new Bookmark[16];
+
+  private enum Pending { NONE, VALUE, KEY_AS_VALUE }
+  private Pending pending = Pending.NONE;
+  private Object pendingValue;
+  private boolean rootRead;
+  private boolean skipping;
+  private final StringBuilder skipBuffer = new StringBuilder();
+  private final StringBuilder keyBuffer = new StringBuilder();
+
+  public TDJSONPullParser(CharSource src, TDJSONOption opt) {
+    this.src = src;
+    this.opt = opt;
+  }
+
+  public static TDJSONPullParser of(String str) { return of(str, new TDJSONOption()); }
+  public static TDJSONPullParser of(String str, TDJSONOption opt) { return new TDJSONPullParser(new ArrayCharSource(str), opt); }
+  public static TDJSONPullParser of(Reader reader) { return of(reader, new TDJSONOption()); }
+  public static TDJSONPullParser of(Reader reader, TDJSONOption opt) { return new TDJSONPullParser(new ReaderCharSource(reader), opt); }
+  public static TDJSONPullParser of(CharSource src) { return new TDJSONPullParser(src, new TDJSONOption()); }
+
+  /** Read the next token. Once the root value is completely read, it returns EOF */
+  public Token next() {
+    key = null;
+    value = null;
+    switch (pending) {
+      case VALUE:
+        pending = Pending.NONE;
+        return readValue();
+      case KEY_AS_VALUE:
+        pending = Pending.NONE;
+        key = keys[depth - 1];
+        return setValue(pendingValue);
+      default:
+    }
+
+    if (depth == 0) {
+      if (rootRead)
+        return token = Token.EOF;
+      rootRead = true;
+      return readValue();
+    }
+
+    return isMap[depth - 1] ? nextInMap() : nextInArray();
+  }
+
+  /**
+   * Skip the current subtree. If current token is START_MAP or START_ARRAY, skip until the matching END_MAP or END_ARRAY
+   * which becomes the current token. If current token is KEY, skip the value of the key. Otherwise, do nothing.
+   *
+   * @return The current token after skip
+   */
+  public Token skip() {
+    int targetDepth;
+    if (token == Token.KEY) {
+      if (pending == Pending.KEY_AS_VALUE) {
+        pending = Pending.NONE;
+        return token;
+      }
+      targetDepth = depth;
+      skipping = true;
+      try {
+        if (next() != Token.START_MAP && token != Token.START_ARRAY)
+          return token;
+      } finally {
+        skipping = false;
+      }
+    } else if (token == Token.START_MAP || token == Token.START_ARRAY)
+      targetDepth = depth - 1;
+    else
+      return token;
+
+    skipping = true;
+    try {
+      while (depth > targetDepth)
+        next();
+    } finally {
+      skipping = false;
+    }
+    key = null;
+    value = null;
+    return token;
+  }
+
+  /**
+   * Skip the rest of the current container, the matching END_MAP or END_ARRAY becomes the current token. If it's at the
+   * root level, do nothing.
+   */
+  public Token skipToEnd() {
+    if (depth == 0)
+      return token;
+    int targetDepth = depth - 1;
+    skipping = true;
+    try {
+      while (depth > targetDepth)
+        next();
+    } finally {
+      skipping = false;
+    }
+    return token;
+  }
+
+  /**
+   * Read the current value into the node. If current token is KEY, the value of the key is read. After return, the
+   * current token is the last token of the value, i.e. VALUE, END_MAP or END_ARRAY.
+   */
+  public TDNode readNode(TDNode node) {
+    if (token == Token.KEY)
+      next();
+    node.setStart(start);
+    switch (token) {
+      case START_MAP: return readChildren(node.setType(TDNode.Type.MAP));
+      case START_ARRAY: return readChildren(node.setType(TDNode.Type.ARRAY));
+      case VALUE: return node.setValue(value);
+      default: return node;
+    }
+  }
+
+  /**
+   * Read the children of the current container into the node until the matching END_MAP or END_ARRAY. The current
+   * token should be either START_MAP, START_ARRAY, or a KEY in the map, in which case reading starts from that key.
+   */
+  public TDNode readChildren(TDNode node) {
+    if (token == Token.END_MAP || token == Token.END_ARRAY)
+      return node;  // The container is already closed
+    int level = depth;
+    // A child container is started at a deeper level, the loop ends once this container is ended
+    for (Token t = token == Token.KEY ? token : next(); depth >= level; t = next()) {
+      if (t != Token.KEY) {
+        readNode(node.createChild());
+        continue;
+      }
+      String k = key;
+      TDNode cn = readNode(node.createChild(k));
+      if (opt.KEY_ID.equals(k) && cn.getType() == TDNode.Type.SIMPLE && cn.getValue() != null)
+        node.getDoc().getIdMap().put(cn.getValue().toString(), node);
+    }
+    return node;
+  }
+
+  private Token nextInMap() {
+    int level = depth - 1;
+    while (true) {
+      char c = TDJSONParser.skipSpaceAndComments(src);
+      start = mark();
+      if (c == EOF_CHAR) {
+        if (withBracket[level])
+          throw src.createParseRuntimeException("EOF while expecting matching '}' with '{'" + at(starts[level]));
+        return end(Token.END_MAP);
+      }
+
+      if (c == '}') {
+        src.skip();
+        return end(Token.END_MAP);
+      }
+
+      if (src.startsWith(opt.deliminatorValue)) { // Skip ,
+        src.skip(opt.deliminatorValue.length());
+        continue;
+      }
+
+      String k;
+      if (c == '"' || c == '\'' || c == '`') {
+        src.skip();
+        k = TDJSONParser.readQuotedKey(src, c, opt, keyBuffer);
+        c = TDJSONParser.skipSpaceAndComments(src);
+        if (!src.startsWith(opt.deliminatorKey) && c != '{' && c != '[' && c != ',' && c != '}')
+          throw src.createParseRuntimeException("No '" + opt.deliminatorKey + "' after key:" + k);
+      } else {
+        k = TDJSONParser.readKey(src, opt, keyBuffer);
+        if (src.isEof())
+          throw src.createParseRuntimeException("No '" + opt.deliminatorKey + "' after key:" + k);
+        c = src.peek();
+      }
+      if (src.startsWith(opt.deliminatorKey))
+        src.skip(opt.deliminatorKey.length());
+
+      if (src.startsWith(opt.deliminatorValue) || c == '}') {  // If there's no ':', we consider it as indexed value (array)
+        pendingValue = k;
+        k = index[level] + "";
+        pending = Pending.KEY_AS_VALUE;
+      } else
+        pending = Pending.VALUE;
+      index[level]++;
+      keys[level] = key = k;
+      return token = Token.KEY;
+    }
+  }
+
+  private Token nextInArray() {
+    int level = depth - 1;
+    char c = TDJSONParser.skipSpaceAndComments(src);
+    if (afterElement[level] && src.startsWith(opt.deliminatorValue)) {
+      src.skip(opt.deliminatorValue.length());
+      c = TDJSONParser.skipSpaceAndComments(src);
+    }
+    afterElement[level] = true;
+
+    start = mark();
+    if (c == EOF_CHAR) {
+      if (withBracket[level])
+        throw src.createParseRuntimeException("EOF while expecting matching ']' with '['" + at(starts[level]));
+      return end(Token.END_ARRAY);
+    }
+
+    if (c == ']') {
+      src.skip();
+      return end(Token.END_ARRAY);
+    }
+
+    key = index[level]++ + "";
+    return readValue();
+  }
+
+  private Token readValue() {
+    boolean isRoot = depth == 0;
+    if (!isRoot && isMap[depth - 1])
+      key = keys[depth - 1];
+
+    char c = TDJSONParser.skipSpaceAndComments(src);
+    start = mark();
+    if (c == EOF_CHAR)
+      return isRoot ? (token = Token.EOF) : setValue(null);
+
+    if (c == '{') {
+      src.skip();
+      return begin(true, true, Token.START_MAP);
+    }
+
+    if (c == '[') {
+      src.skip();
+      return begin(false, true, Token.START_ARRAY);
+    }
+
+    if (isRoot) {
+      switch (opt.defaultRootType) {
+        case MAP: return begin(true, false, Token.START_MAP);
+        case ARRAY: return begin(false, false, Token.START_ARRAY);
+        default:
+      }
+    }
+
+    if (c == '"' || c == '\'' || c == '`') {
+      src.skip();
+      StringBuilder sb = skipping ? skipBuffer : new StringBuilder();
+      sb.setLength(0);
+      src.readQuotedString(c, sb);
+      TDJSONParser.readContinuousString(src, sb);
+      return setValue(skipping ? null : sb.toString());
+    }
+
+    String term = isRoot ? opt.termValue : isMap[depth - 1] ? opt.termValueInMap : opt.termValueInArray;
+    if (skipping) {
+      src.readUntil(term, opt.termValueStrs, null, true, 0, Integer.MAX_VALUE);
+      return setValue(null);
+    }
+    String str = src.readUntil(term, opt.termValueStrs).trim();
+    return setValue(ClassUtil.toSimpleObject(str));
+  }
+
+  private Bookmark mark() { return opt.trackPosition ? src.getBookmark() : null; }
+  private static String at(Bookmark bookmark) { return bookmark == null ? "" : " at " + bookmark; }
+
+  private Token setValue(Object val) {
+    if (val != null && opt.getDocId() != null && (opt.KEY_ID.equals(key) || TDNode.REF_KEY.equals(key)))
+      val = val + "_" + opt.getDocId();
+    value = val;
+    return token = Token.VALUE;
+  }
+
+  private Token begin(boolean map, boolean bracket, Token t) {
+    if (depth >= opt.maxDepth)
+      throw src.createParseRuntimeException("Exceeded max depth " + opt.maxDepth + at(start));
+    if (depth == isMap.length) {
+      int len = depth * 2;
+      isMap = Arrays.copyOf(isMap, len);
+      withBracket = Arrays.copyOf(withBracket, len);
+      afterElement = Arrays.copyOf(afterElement, len);
+      index = Arrays.copyOf(index, len);
+      keys = Arrays.copyOf(keys, len);
+      starts = Arrays.copyOf(starts, len);
+    }
+    isMap[depth] = map;
+    withBracket[depth] = bracket;
+    afterElement[depth] = false;
+    index[depth] = 0;
+    keys[depth] = null;
+    starts[depth] = start;
+    depth++;
+    return token = t;
+  }
+
+  private Token end(Token t) {
+    depth--;
+    if (depth > 0 && isMap[depth - 1])
+      key = keys[depth - 1];
+    return token = t;
+  }
+}
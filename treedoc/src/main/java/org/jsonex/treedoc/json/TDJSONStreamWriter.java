@@ -0,0 +1,154 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.treedoc.json;
+
+import lombok.Getter;
+import org.jsonex.treedoc.TDNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import static org.jsonex.treedoc.json.TDJSONOption.TextType.*;
+
+/**
+ * A token level JSON writer that writes directly to an {@link Appendable} without building a {@link TDNode} tree.
+ * The output is the same as what {@link TDJSONWriter} produces for the equivalent tree with the same {@link TDJSONOption}.
+ *
+ * <p>Keys are written lazily: {@link #key(String)} only remembers the key, it's written together with the value. If no
+ * value is written for the key, it can be dropped with {@link #closeTo(int)}.
+ *
+ * <p>Node filters in {@link TDJSONOption} are not applied as they work on TDNode.
+ *
+ * <p>IOException from the underlying Appendable is rethrown as {@link UncheckedIOException}
+ */
+public class TDJSONStreamWriter {
+  private final Appendable out;
+  @Getter private final TDJSONOption option;
+  private final TDJSONWriter nodeWriter = TDJSONWriter.get();
+
+  /** Current nesting depth, 0 means root level */
+  @Getter private int depth;
+  private boolean[] isMap = new boolean[16];
+  private int[] childCount = new int[16];
+  private String pendingKey;
+
+  public TDJSONStreamWriter(Appendable out, TDJSONOption option) {
+    this.out = out;
+    this.option = option;
+  }
+
+  public TDJSONStreamWriter startMap() { return start(true, option.writerPlan().mapStart); }
+  public TDJSONStreamWriter startArray() { return start(false, option.writerPlan().arrayStart); }
+  public TDJSONStreamWriter endMap() { return end(option.writerPlan().mapEnd); }
+  public TDJSONStreamWriter endArray() { return end(option.writerPlan().arrayEnd); }
+
+  /** Set the key for the next value in the current map */
+  public TDJSONStreamWriter key(String key) {
+    pendingKey = key;
+    return this;
+  }
+
+  /** Write a simple value, it's written the same way as a SIMPLE TDNode with the value */
+  public TDJSONStreamWriter value(Object value) {
+    try {
+      beforeValue();
+      if (value instanceof String)
+        nodeWriter.writeQuotedString(out, (String) value, option, STRING);
+      else if (value instanceof Character)
+        nodeWriter.writeQuotedString(out, String.valueOf(value), option, STRING);
+      else
+        out.append(option.deco(String.valueOf(value), NON_STRING));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  /** Write a whole TDNode subtree as a value */
+  public TDJSONStreamWriter node(TDNode node) {
+    beforeValue();
+    try {
+      nodeWriter.write(out, node, option, option.writerPlan(), "", depth);
+    } catch (Exception e) {  // TDJSONWriter throws IOException sneakily
+      if (e instanceof IOException)
+        throw new UncheckedIOException((IOException) e);
+      throw e;
+    }
+    return this;
+  }
+
+  /**
+   * Close all the containers above the given depth and drop the pending key if any. Used to keep the output well-formed
+   * after an error in the middle of a value
+   */
+  public TDJSONStreamWriter closeTo(int depth) {
+    pendingKey = null;
+    TDJSONWriterPlan plan = option.writerPlan();
+    while (this.depth > depth)
+      end(isMap[this.depth - 1] ? plan.mapEnd : plan.arrayEnd);
+    return this;
+  }
+
+  private TDJSONStreamWriter start(boolean map, String token) {
+    try {
+      beforeValue();
+      out.append(token);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (depth == isMap.length) {
+      isMap = Arrays.copyOf(isMap, depth * 2);
+      childCount = Arrays.copyOf(childCount, depth * 2);
+    }
+    isMap[depth] = map;
+    childCount[depth] = 0;
+    depth++;
+    return this;
+  }
+
+  private TDJSONStreamWriter end(String token) {
+    try {
+      pendingKey = null;
+      depth--;
+      TDJSONWriterPlan plan = option.writerPlan();
+      if (plan.hasIndent && childCount[depth] > 0)
+        out.append('\n').append(plan.indent(depth));
+      out.append(token);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  /** Write the deliminator, indent and pending key before a value */
+  private void beforeValue() {
+    if (depth == 0)
+      return;
+
+    try {
+      TDJSONWriterPlan plan = option.writerPlan();
+      int level = depth - 1;
+      if (childCount[level]++ > 0)
+        out.append(plan.valueSeparator);
+      if (plan.hasIndent)
+        out.append('\n').append(plan.indent(depth));
+
+      if (isMap[level]) {
+        String key = pendingKey;
+        pendingKey = null;
+        nodeWriter.writeKey(out, key, option);
+        out.append(plan.keySeparator);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
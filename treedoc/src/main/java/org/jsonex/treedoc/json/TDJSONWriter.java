@@ -31,68 +31,23 @@ public class TDJSONWriter {
 
   public <T extends Appendable> T write(T out, TDNode node, TDJSONOption opt) { return write(out, node, opt, ""); }
 
-  @SneakyThrows
+  /** @param indentStr The indent of the node level, the child levels are indented relative to it */
   public <T extends Appendable> T write(T out, TDNode node, TDJSONOption opt, String indentStr) {
-    if (node == null)
-      return (T) out.append(opt.deco("null", NON_STRING));
-
-    String childIndentStr = "";
-    if (opt.hasIndent())
-      childIndentStr = indentStr + opt.getIndentStr();
-
-    switch (node.getType()) {
-      case MAP: return writeMap(out, node, opt, indentStr, childIndentStr);
-      case ARRAY: return writeArray(out, node, opt, indentStr, childIndentStr);
-      default: return writeSimple(out, node, opt);
-    }
+    return write(out, node, opt, opt.writerPlan(), indentStr, 0);
   }
 
-  @SneakyThrows
-  <T extends Appendable> T writeMap(T out, TDNode node, TDJSONOption opt, String indentStr, String childIndentStr) {
-    out.append(opt.deco("{", OPERATOR));
-    for (int i = 0; i < node.getChildrenSize(); i++) {
-      TDNode cn = opt.applyFilters(node.getChild(i));
-      if (cn == null)
-        continue;
-
-      if (opt.hasIndent())
-        out.append('\n').append(childIndentStr);
-
-      if (!StringUtil.isJavaIdentifier(cn.getKey()) || opt.alwaysQuoteName)  // Quote the key in case  it's not valid java identifier
-        writeQuotedString(out, cn.getKey(), opt, KEY);
-      else
-        out.append(opt.deco(cn.getKey(), KEY));
-      out.append(opt.deco(opt.deliminatorKey, OPERATOR));
-      write(out, cn, opt, childIndentStr);
-      if (i < node.getChildrenSize() - 1) // No need "," for last entry
-        out.append(opt.deco(opt.deliminatorValue, OPERATOR));
-    }
-
-    if (opt.hasIndent() && node.hasChildren())
-      out.append('\n').append(indentStr);
-
-    return (T) out.append(opt.deco("}", OPERATOR));
+  /** It's not recursive, so very deep trees can be written, see {@link TDJSONChunkWriter} */
+  <T extends Appendable> T write(T out, TDNode node, TDJSONOption opt, TDJSONWriterPlan plan, String baseIndent, int depth) {
+    new TDJSONChunkWriter(this, out, node, opt, plan, baseIndent, depth).writeAll();
+    return out;
   }
 
+  /** Quote the key in case it's not valid java identifier, the identifier check is skipped if alwaysQuoteName */
   @SneakyThrows
-  <T extends Appendable> T writeArray(T out, TDNode node, TDJSONOption opt, String indentStr, String childIndentStr) {
-    out.append(opt.deco("[", OPERATOR));
-    if (node.hasChildren()) {
-      for (int i = 0; i < node.getChildrenSize(); i++) {
-        TDNode cn = node.getChild(i);
-        if (opt.hasIndent())
-          out.append('\n').append(childIndentStr);
-
-        write(out, cn, opt, childIndentStr);
-        if (i < node.getChildrenSize() - 1) // No need "," for last entry
-          out.append(opt.deco(opt.deliminatorValue, OPERATOR));
-      }
-
-      if (opt.hasIndent() && node.hasChildren())
-        out.append('\n').append(indentStr);
-    }
-
-    return (T)out.append(opt.deco("]", OPERATOR));
+  <T extends Appendable> T writeKey(T out, String key, TDJSONOption opt) {
+    if (opt.alwaysQuoteName || !StringUtil.isJavaIdentifier(key))
+      return writeQuotedString(out, key, opt, KEY);
+    return (T) out.append(opt.deco(key, KEY));
   }
 
   @SneakyThrows
@@ -108,8 +63,11 @@ public class TDJSONWriter {
   }
 
   <T extends Appendable> T writeQuotedString(T out, String str, TDJSONOption opt, TextType type) throws IOException {
-    return (T) out.append(opt.quoteChar)
-        .append(opt.deco(StringUtil.cEscape(str, opt.quoteChar, true), type))
-        .append(opt.quoteChar);
+    out.append(opt.quoteChar);
+    if (opt.textDecorator == null)  // Escape into out directly without intermediate String
+      StringUtil.cEscape(out, str, opt.quoteChar, true);
+    else
+      out.append(opt.deco(StringUtil.cEscape(str, opt.quoteChar, true), type));
+    return (T) out.append(opt.quoteChar);
   }
 }
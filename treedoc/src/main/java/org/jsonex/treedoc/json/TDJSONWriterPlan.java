@@ -0,0 +1,80 @@
+/*************************************************************
+ Copyright 2018-2019 eBay Inc.
+ Author/Developer: Jianwu Chen
+
+ Use of this source code is governed by an MIT-style
+ license that can be found in the LICENSE file or at
+ https://opensource.org/licenses/MIT.
+ ************************************************************/
+
+package org.jsonex.treedoc.json;
+
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+import static org.jsonex.treedoc.json.TDJSONOption.TextType.NON_STRING;
+import static org.jsonex.treedoc.json.TDJSONOption.TextType.OPERATOR;
+
+/**
+ * The writer related settings of a {@link TDJSONOption} compiled for {@link TDJSONWriter} and
+ * {@link TDJSONStreamWriter}: operators are decorated once, and indent strings are cached by depth.
+ *
+ * <p>It's immutable except the indent cache which only grows, so it can be shared by threads. It's rebuilt by
+ * {@link TDJSONOption#writerPlan()} if the options it's compiled from are changed. The textDecorator is expected to
+ * return the same result for the same input, as operators are only decorated once.
+ */
+final class TDJSONWriterPlan {
+  private final String deliminatorKey;
+  private final String deliminatorValue;
+  private final String indentStr;
+  private final BiFunction<String, TDJSONOption.TextType, String> textDecorator;
+
+  final boolean decorated;
+  final boolean hasIndent;
+  final String mapStart;
+  final String mapEnd;
+  final String arrayStart;
+  final String arrayEnd;
+  final String keySeparator;
+  final String valueSeparator;
+  final String nullValue;
+
+  private volatile String[] indents = { "" };
+
+  TDJSONWriterPlan(TDJSONOption opt) {
+    deliminatorKey = opt.deliminatorKey;
+    deliminatorValue = opt.deliminatorValue;
+    indentStr = opt.indentStr;
+    textDecorator = opt.textDecorator;
+
+    decorated = textDecorator != null;
+    hasIndent = opt.hasIndent();
+    mapStart = opt.deco("{", OPERATOR);
+    mapEnd = opt.deco("}", OPERATOR);
+    arrayStart = opt.deco("[", OPERATOR);
+    arrayEnd = opt.deco("]", OPERATOR);
+    keySeparator = opt.deco(deliminatorKey, OPERATOR);
+    valueSeparator = opt.deco(deliminatorValue, OPERATOR);
+    nullValue = opt.deco("null", NON_STRING);
+  }
+
+  /** @return true if the plan is still valid for the option */
+  boolean matches(TDJSONOption opt) {
+    return deliminatorKey == opt.deliminatorKey && deliminatorValue == opt.deliminatorValue
+        && indentStr == opt.indentStr && textDecorator == opt.textDecorator;
+  }
+
+  /** @return The indent string for the depth, 0 is the root level */
+  String indent(int depth) {
+    String[] result = indents;
+    if (depth < result.length)
+      return result[depth];
+
+    int len = result.length;
+    result = Arrays.copyOf(result, Math.max(depth + 1, len * 2));
+    for (int i = len; i < result.length; i++)
+      result[i] = result[i - 1] + indentStr;
+    indents = result;
+    return result[depth];
+  }
+}
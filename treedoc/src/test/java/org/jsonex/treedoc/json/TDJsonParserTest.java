@@ -2,17 +2,29 @@ package org.jsonex.treedoc.json;
 
 import lombok.extern.slf4j.Slf4j;
 import org.jsonex.core.charsource.ArrayCharSource;
+import org.jsonex.core.charsource.ByteBufferCharSource;
+import org.jsonex.core.charsource.CharSource;
+import org.jsonex.core.charsource.ParseRuntimeException;
 import org.jsonex.core.charsource.ReaderCharSource;
+import org.jsonex.core.util.ClassUtil;
 import org.jsonex.core.util.ListUtil;
 import org.jsonex.core.util.MapBuilder;
+import org.jsonex.core.util.StringPool;
 import org.jsonex.treedoc.TDNode;
 import org.jsonex.treedoc.TreeDoc;
 import org.junit.Test;
 
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.jsonex.core.util.FileUtil.loadResource;
 import static org.jsonex.core.util.FileUtil.readResource;
@@ -63,6 +75,16 @@ public class TDJsonParserTest {
     log.info("formatted json: " + json);
   }
 
+  @Test public void testParseByteBuffer() throws Exception {
+    TDNode expected = TDJSONParser.get().parse(readResource(this.getClass(), "testdata.json"));
+    Path path = Paths.get(this.getClass().getResource("testdata.json").toURI());
+    assertEquals(expected, TDJSONParser.get().parse(ByteBufferCharSource.ofFile(path)));
+
+    String json = "{name: '\u4e2d\u6587 \uD83D\uDE00', 'k\u00e9y': [1, \"\u00e9\"]}";
+    assertEquals(TDJSONParser.get().parse(json),
+        TDJSONParser.get().parse(new ByteBufferCharSource(json.getBytes(StandardCharsets.UTF_8))));
+  }
+
   @Test public void testParseValueWithoutKey() {
     String json = "{\n" +
         "  abc: 10\n" +
@@ -181,6 +203,54 @@ public class TDJsonParserTest {
 
   private final static String EXPECTED_STREAM_MERGE_RESULT =
       "[{a: 1, obj: {$id: '1_0'}, ref: {$ref: '#1_0'}}, {b: 2, obj: {$id: '1_1'}, ref: {$ref: '#1_1'}}, 'a:1', 'b:2']";
+  @Test public void testWideMap() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < 1000; i++)
+      sb.append("k").append(i).append(": ").append(i).append(",\n");
+    sb.append("k10: 'dup'}");  // Duplicated key is converted to array as textproto
+    TDNode node = TDJSONParser.get().parse(sb.toString());
+    assertEquals(1000, node.getChildrenSize());
+    assertEquals(999, node.getChildValue("k999"));
+    assertEquals("k10: [10, 'dup']", node.getChild("k10").toString());
+    assertNull(node.getChild("k1000"));
+
+    TDNode n5 = node.getChild("k5");
+    n5.setKey("new5");
+    assertNull(node.getChild("k5"));
+    assertSame(n5, node.getChild("new5"));
+
+    node.getChild("k7").setKey("k6");  // Both children have key k6, the first one is found
+    assertEquals(6, node.getChildValue("k6"));
+    node.getChild("k6").setKey("k7");
+    assertEquals(7, node.getChildValue("k6"));
+
+    node.getChild("k20").swapWith(node.getChild("k30"));
+    assertEquals(30, node.getChildValue("k20"));
+    assertEquals(20, node.getChildValue("k30"));
+
+    node.getChildren().remove(node.getChildrenSize() - 1);  // Changed directly
+    assertNull(node.getChild("k999"));
+    node.createChild("k999").setValue("new");
+    assertEquals("new", node.getChildValue("k999"));
+
+    node = TDJSONParser.get().parse(sb.toString());
+    node.getChild("k1");  // Index is built
+    node.getChildren().remove(node.getChildrenSize() - 1);
+    node.addChild(new TDNode(node.getDoc(), "new"));  // Size is the same as when the index is built
+    assertEquals("new", node.getChild("new").getKey());
+    node.getChildren().add(0, new TDNode(node.getDoc(), "first"));
+    node.getChildren().remove(node.getChildrenSize() - 1);
+    assertEquals("first", node.getChild("first").getKey());
+    assertNull(node.getChild("new"));
+
+    node = TDJSONParser.get().parse(sb.toString());
+    node.getChild("k1");
+    node.getChildren().set(5, new TDNode(node, "zz").setValue("zz"));  // Replaced directly
+    assertEquals("zz", node.getChildValue("zz"));
+    assertNull(node.getChild("k5"));
+    assertEquals(6, node.getChildValue("k6"));
+  }
+
   @Test public void testStream() {
     ReaderCharSource reader = new ReaderCharSource(loadResource(this.getClass(), "stream.json"));
     List<TDNode> nodes = new ArrayList<>();
@@ -215,6 +285,45 @@ public class TDJsonParserTest {
     assertEquals(expectedError, error);
   }
 
+  @Test public void testParseAllParallel() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++)
+      sb.append(i % 7 == 0 ? "\n" : "").append("{i: ").append(i).append(", obj: {$id: 1}, ref: {$ref: '#1'}}\n");
+    sb.append("'last'");
+    String str = sb.toString();
+
+    TDNode expected = TDJSONParser.get().parseAll(str, new TDJSONOption());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      TDNode node = TDJSONParser.get().parseAllParallel(new ArrayCharSource(str), new TDJSONOption(), executor, 100);
+      assertEquals(expected, node);
+      assertEquals(expected.getChild(150).getStart().toString(), node.getChild(150).getStart().toString());
+      assertSame(node.getChild(150).getChild("obj"), node.getDoc().getIdMap().get("1_150"));
+
+      node = TDJSONParser.get().parseAllParallel(
+          new ByteBufferCharSource(str.getBytes(StandardCharsets.UTF_8)), new TDJSONOption(), executor, 100);
+      assertEquals(expected, node);
+      assertEquals(expected.getChild(200).getEnd().toString(), node.getChild(200).getEnd().toString());
+
+      CharSource src = new ArrayCharSource(str);
+      node = TDJSONParser.get().parseAllParallel(src, new TDJSONOption(), executor, str.length());  // Single chunk
+      assertEquals(expected, node);
+      assertEquals(expected.getChild(200).getEnd().toString(), node.getChild(200).getEnd().toString());
+      assertEquals(0, src.getPos());
+      assertEquals(expected, TDJSONParser.get().parseAllParallel(src, new TDJSONOption(), executor, 100));
+
+      try {
+        TDJSONParser.get().parseAllParallel(
+            new ArrayCharSource(str + "\n{a: 1,\nb: 2}"), new TDJSONOption(), executor, str.length());
+        fail("Should fail for multi-line document");
+      } catch (ParseRuntimeException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Each line should contain exactly one document"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test public void testParseMissingClosing () {
     parseWithException("{abc:1", "EOF while expecting matching '}' with '{' at Bookmark(line=0, col=0, pos=0), Bookmark(line=0, col=6, pos=6), digest:");
     parseWithException("{a:[abc,def}", "EOF while expecting matching ']' with '[' at Bookmark(line=0, col=3, pos=3), Bookmark(line=0, col=12, pos=12), digest:");
@@ -222,6 +331,124 @@ public class TDJsonParserTest {
     parseWithException("{'a'", "No ':' after key:a, Bookmark(line=0, col=4, pos=4), digest:");
   }
 
+  @Test public void testParseWithKeyPool() {
+    TDJSONOption opt = new TDJSONOption().setKeyPool(new StringPool());
+    String json = readResource(this.getClass(), "testdata.json");
+    assertEquals(TDJSONParser.get().parse(json), TDJSONParser.get().parse(json, opt));
+
+    TDNode node = TDJSONParser.get().parse("[{a:1, 'b c':2}, { a :3, \"b c\":4}]", opt);
+    assertEquals("[{a: 1, b c: 2}, {a: 3, b c: 4}]", node.toString());
+    assertSame(node.getChild(0).getChild(0).getKey(), node.getChild(1).getChild(0).getKey());
+    assertSame(node.getChild(0).getChild(1).getKey(), node.getChild(1).getChild(1).getKey());
+
+    node = TDJSONParser.get().parseAll("{a:1}\n{ a :2}", opt);  // Pool is shared by the documents
+    assertSame(node.getChild(0).getChild(0).getKey(), node.getChild(1).getChild(0).getKey());
+
+    TDJSONPullParser parser = TDJSONPullParser.of("{a:1, b:{a:2}}", opt);
+    List<String> keys = new ArrayList<>();
+    for (TDJSONPullParser.Token t = parser.next(); t != TDJSONPullParser.Token.EOF; t = parser.next())
+      if (t == TDJSONPullParser.Token.KEY)
+        keys.add(parser.getKey());
+    assertEquals(ListUtil.listOf("a", "b", "a"), keys);
+    assertSame(keys.get(0), keys.get(2));
+  }
+
+  @Test public void testParseWithoutPosition() {
+    String json = readResource(this.getClass(), "testdata.json");
+    TDNode node = TDJSONParser.get().parse(json, new TDJSONOption().setTrackPosition(false));
+    assertEquals(TDJSONParser.get().parse(json), node);
+    assertNull(node.getStart());
+    assertNull(node.getByPath("data/1/address").getEnd());
+
+    try {
+      TDJSONParser.get().parse("{abc:1", new TDJSONOption().setTrackPosition(false));
+      fail("Should throw exception");
+    } catch (ParseRuntimeException e) {
+      assertEquals("EOF while expecting matching '}' with '{', Bookmark(line=0, col=6, pos=6), digest:", e.getMessage());
+    }
+  }
+
+  @Test public void testParseColumnarArrays() {
+    TDJSONOption opt = new TDJSONOption().setColumnarArrays(true);
+    String json = readResource(this.getClass(), "testdata.json");
+    TDNode expected = TDJSONParser.get().parse(json);
+    TDNode node = TDJSONParser.get().parse(json, opt);
+    assertEquals(expected, node);
+    assertEquals(expected.toString(), node.toString());
+    assertEquals(TDJSONWriter.get().writeAsString(expected), TDJSONWriter.get().writeAsString(node));
+
+    node = TDJSONParser.get().parse("[{a:1,b:'x'},{a:2,b:'y'},{a:3,b:null}]", opt);
+    assertTrue(node.isColumnar());
+    assertEquals("[{a: 1, b: 'x'}, {a: 2, b: 'y'}, {a: 3, b: }]", node.toString());
+    assertEquals("y", node.getValueByPath("1/b"));
+    assertEquals(2, node.getChild(1).getChildValue("a"));
+    assertNull(node.getChild(1).getChild("c"));
+
+    node.getChild(1).getChild("a").setValue("str");  // Written back to the column
+    assertEquals("str", node.getValueByPath("1/a"));
+    assertEquals(3, node.getValueByPath("2/a"));
+
+    node.addChild(TDJSONParser.get().parse("{a:4,c:5}"));  // Not the same keys, fall back to nodes
+    assertFalse(node.isColumnar());
+    assertEquals("[{a: 1, b: 'x'}, {a: 'str', b: 'y'}, {a: 3, b: }, {a: 4, c: 5}]", node.toString());
+
+    node = TDJSONParser.get().parse("[1,2,3]", opt);
+    TDNode cell = node.getChild(0);  // The view is taken before the caches are computed
+    node.hashCode();
+    cell.setValue(99);
+    assertEquals("[99, 2, 3]", node.toString());
+    assertEquals(TDJSONParser.get().parse("[99,2,3]").hashCode(), node.hashCode());
+
+    node = TDJSONParser.get().parse("[{a:1},{a:2}]", opt);
+    cell = node.getChild(0).getChild("a");
+    node.toString();
+    cell.setValue(99);
+    assertEquals("[{a: 99}, {a: 2}]", node.toString());
+
+    node = TDJSONParser.get().parseAll("[1,2]\n[3,4]", opt);
+    assertTrue(node.getChild(0).isColumnar());
+    assertTrue(node.getChild(1).isColumnar());
+
+    for (String str : new String[] { "[1,2.5,'a',true]", "[]", "[{},{}]", "[[1,2],[3,4]]", "[{$id:1},{$id:2}]", "[{a:[1]}]" })
+      assertEquals(TDJSONParser.get().parse(str), TDJSONParser.get().parse(str, opt));
+    assertTrue(TDJSONParser.get().parse("[1,2.5,'a',true]", opt).isColumnar());
+    assertFalse(TDJSONParser.get().parse("[{$id:1},{$id:2}]", opt).isColumnar());
+  }
+
+  @Test public void testPrimitiveValues() {
+    TDNode node = TDJSONParser.get().parse("{i:1, l:12345678901, d:-1.5, b:true, s:abc, n:null}");
+    assertEquals(1, node.getChildValue("i"));
+    assertEquals(12345678901L, node.getChildValue("l"));
+    assertEquals(-1.5, node.getChildValue("d"));
+    assertEquals(true, node.getChildValue("b"));
+    assertEquals(12345678901L, node.getChild("l").getLongValue());
+    assertEquals(1.0, node.getChild("i").getDoubleValue(), 0);
+    assertEquals(-1, node.getChild("d").getLongValue());
+    assertTrue(node.getChild("d").isNumber());
+    assertFalse(node.getChild("b").isNumber());
+    assertEquals("{i: 1, l: 12345678901, d: -1.5, b: true, s: 'abc', n: }", node.toString());
+
+    TDNode boxed = new TreeDoc().getRoot().setType(TDNode.Type.MAP);
+    for (Object[] kv : new Object[][] { {"i", 1}, {"l", 12345678901L}, {"d", -1.5}, {"b", true}, {"s", "abc"}, {"n", null} })
+      boxed.createChild((String) kv[0]).setValue(kv[1]);
+    assertEquals(boxed, node);
+    assertEquals(boxed.hashCode(), node.hashCode());
+
+    node.getChild("b").setLongValue(5);
+    assertEquals(5L, node.getChildValue("b"));
+    node.getChild("b").setValue("str");
+    assertEquals("str", node.getChildValue("b"));
+    try {
+      node.getChild("b").getLongValue();
+      fail("Should throw exception");
+    } catch (IllegalStateException e) {
+      assertEquals("Value is not a number: str", e.getMessage());
+    }
+
+    for (String str : new String[] { "0x1F", "1e5", "+3", ".5", "-", "1.2.3", "2147483647", "-2147483649", "" })
+      assertEquals(str, ClassUtil.toSimpleObject(str), TDJSONParser.setSimpleValue(new TreeDoc().getRoot(), str).getValue());
+  }
+
   @Test public void testParseMapToString() {
     Map<String, Object> map = new MapBuilder<String, Object>()
         .put("K1", "v1")
@@ -236,4 +463,124 @@ public class TDJsonParserTest {
     TDNode node = TDJSONParser.get().parse(str, TDJSONOption.ofMapToString());
     assertEquals("{K1: 'v1', k2: 123, k3: {c: 'Test with ,in'}, k4: ['ab,c', 'def']}", node.toString());
   }
+
+  @Test public void testPullParser() {
+    assertPullParserMatches(readResource(this.getClass(), "testdata.json"), new TDJSONOption());
+    assertPullParserMatches(readResource(this.getClass(), "testdata.json5"), TDJSONOption.ofDefaultRootType(TDNode.Type.MAP));
+    assertPullParserMatches(readResource(this.getClass(), "testdata.textproto"), TDJSONOption.ofDefaultRootType(TDNode.Type.MAP));
+    assertPullParserMatches(readResource(this.getClass(), "rootArray.json"), TDJSONOption.ofDefaultRootType(TDNode.Type.ARRAY));
+    assertPullParserMatches("{abc: 10\n aaa\n}", new TDJSONOption());
+    assertPullParserMatches("{K1=v1, k2=[1, 'ab,c'], k3={}}", TDJSONOption.ofMapToString());
+    assertPullParserMatches("[,1,,'a' 'b'//comment\n]", new TDJSONOption());
+    assertPullParserMatches("{$id:1, a:{$ref:1}}", new TDJSONOption().setDocId(3));
+    assertPullParserMatches("abc", new TDJSONOption());
+    assertPullParserMatches("{a:[{b:1},[2]],c:3}", new TDJSONOption());
+
+    TDJSONPullParser p = TDJSONPullParser.of("{abc:1");
+    p.next();
+    p.next();
+    p.next();
+    try {
+      p.next();
+      fail("Should throw exception");
+    } catch (ParseRuntimeException e) {
+      assertEquals("EOF while expecting matching '}' with '{' at Bookmark(line=0, col=0, pos=0), Bookmark(line=0, col=6, pos=6), digest:", e.getMessage());
+    }
+
+    p = TDJSONPullParser.of("{abc:1", new TDJSONOption().setTrackPosition(false));
+    p.next();
+    assertNull(p.getStart());
+    p.next();
+    p.next();
+    try {
+      p.next();
+      fail("Should throw exception");
+    } catch (ParseRuntimeException e) {
+      assertEquals("EOF while expecting matching '}' with '{', Bookmark(line=0, col=6, pos=6), digest:", e.getMessage());
+    }
+  }
+
+  @Test public void testPullParserSkip() {
+    TDJSONPullParser p = TDJSONPullParser.of("{a:{b:[1,{c:2}],d:'x'}, e:[3], f:4}");
+    assertEquals(TDJSONPullParser.Token.START_MAP, p.next());
+    assertEquals(TDJSONPullParser.Token.KEY, p.next());
+    assertEquals("a", p.getKey());
+    assertEquals(TDJSONPullParser.Token.END_MAP, p.skip());
+    assertEquals(1, p.getDepth());
+
+    assertEquals(TDJSONPullParser.Token.KEY, p.next());
+    assertEquals(TDJSONPullParser.Token.START_ARRAY, p.next());
+    assertEquals(TDJSONPullParser.Token.END_ARRAY, p.skip());
+
+    assertEquals(TDJSONPullParser.Token.KEY, p.next());
+    assertEquals("f", p.getKey());
+    assertEquals(TDJSONPullParser.Token.VALUE, p.next());
+    assertEquals(4, p.getValue());
+    assertEquals(TDJSONPullParser.Token.END_MAP, p.next());
+    assertEquals(TDJSONPullParser.Token.EOF, p.next());
+  }
+
+  private static void assertPullParserMatches(String str, TDJSONOption opt) {
+    TDNode expected = TDJSONParser.get().parse(str, opt);
+    TDJSONPullParser p = TDJSONPullParser.of(str, opt);
+    TDNode node = new TreeDoc().getRoot();
+    Deque<TDNode> stack = new ArrayDeque<>();
+    TDNode keyNode = null;
+    for (TDJSONPullParser.Token t = p.next(); t != TDJSONPullParser.Token.EOF; t = p.next()) {
+      TDNode parent = stack.peek();
+      TDNode target = parent == null ? node : parent.getType() == TDNode.Type.ARRAY ? null : keyNode;
+      switch (t) {
+        case KEY: keyNode = parent.createChild(p.getKey()); break;
+        case START_MAP:
+        case START_ARRAY:
+          target = target != null ? target : parent.createChild();
+          stack.push(target.setType(t == TDJSONPullParser.Token.START_MAP ? TDNode.Type.MAP : TDNode.Type.ARRAY));
+          break;
+        case VALUE: (target != null ? target : parent.createChild()).setValue(p.getValue()); break;
+        default: stack.pop();
+      }
+    }
+    assertEquals(TDJSONWriter.get().writeAsString(expected), TDJSONWriter.get().writeAsString(node));
+
+    p = TDJSONPullParser.of(str, opt);
+    p.next();
+    node = p.readNode(new TreeDoc().getRoot());
+    assertEquals(TDJSONWriter.get().writeAsString(expected), TDJSONWriter.get().writeAsString(node));
+  }
+
+  @Test public void testParseDeepDocument() {
+    int depth = 100000;
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < depth; i++)
+      sb.append("{a:[");
+    sb.append(1);
+    for (int i = 0; i < depth; i++)
+      sb.append("]}");
+    String json = sb.toString();
+
+    TDNode node = TDJSONParser.get().parse(json);
+    assertEquals(json, TDJSONWriter.get().writeAsString(node, new TDJSONOption().setAlwaysQuoteName(false)));
+    int[] count = {0};
+    node.foreach(n -> count[0]++);
+    assertEquals(2 * depth + 1, count[0]);
+    assertTrue(node.toString().startsWith("{a: [{a: [{a: ["));
+    TDNode node1 = TDJSONParser.get().parse(json);
+    assertEquals(node.hashCode(), node1.hashCode());
+    assertEquals(node, node1);
+    TDNode leaf = node1;
+    while (leaf.hasChildren())
+      leaf = leaf.getChild(0);
+    assertEquals(2 * depth, leaf.getPath().size());
+    leaf.setValue(2);
+    assertNotEquals(node, node1);
+
+    try {
+      TDJSONParser.get().parse(json, new TDJSONOption().setMaxDepth(100));
+      fail("Should fail for too deep document");
+    } catch (ParseRuntimeException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Exceeded max depth 100"));
+    }
+    TDNode shallow = TDJSONParser.get().parse("{a:[{b:1}]}", new TDJSONOption().setMaxDepth(3));
+    assertEquals("{a: [{b: 1}]}", shallow.toString());
+  }
 }
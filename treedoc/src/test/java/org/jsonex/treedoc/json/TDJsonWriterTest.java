@@ -42,4 +42,67 @@ public class TDJsonWriterTest {
     assertTrue("Should contains:" + (exp = "<font color=red>:</font>"),  str.contains(exp));
     assertTrue("Should contains:" + (exp = "<font color=green>9007199254740991</font>"),  str.contains(exp));
   }
+
+  @Test public void testStreamWriter() {
+    TDNode node = TDJSONParser.get().parse("{a:1,'b c':[1,'x',{}],d:{e:null},f:[]}");
+    TDJSONOption opt = TDJSONOption.ofIndentFactor(2).setAlwaysQuoteName(false);
+    StringBuilder sb = new StringBuilder();
+    new TDJSONStreamWriter(sb, opt).startMap()
+        .key("a").value(1)
+        .key("b c").startArray().value(1).value('x').startMap().endMap().endArray()
+        .key("skipped")
+        .key("d").node(node.getChild("d"))
+        .key("f").startArray().closeTo(1)
+        .endMap();
+    assertEquals(TDJSONWriter.get().writeAsString(node, opt), sb.toString());
+  }
+
+  @Test public void testWriterPlan() {
+    TDNode node = TDJSONParser.get().parse("{a:1,'b c':[1,{d:null}]}");
+    TDJSONOption opt = TDJSONOption.ofIndentFactor(2).setAlwaysQuoteName(false);
+    assertEquals("{\n  a:1,\n  \"b c\":[\n    1,\n    {\n      d:null\n    }\n  ]\n}",
+        TDJSONWriter.get().writeAsString(node, opt));
+    TDJSONWriterPlan plan = opt.writerPlan();
+    assertSame(plan, opt.writerPlan());
+    assertEquals("      ", plan.indent(3));
+
+    // Indent relative to the given indent
+    assertEquals("{\n>  a:1,\n>  \"b c\":[\n>    1,\n>    {\n>      d:null\n>    }\n>  ]\n>}",
+        TDJSONWriter.get().write(new StringBuilder(), node, opt, ">").toString());
+
+    // Plan is rebuilt when option is changed
+    opt.setIndentFactor(0).setDeliminatorKey("=").setDeliminatorValue(", ");
+    assertNotSame(plan, opt.writerPlan());
+    assertEquals("{a=1, \"b c\"=[1, {d=null}]}", TDJSONWriter.get().writeAsString(node, opt));
+    opt.setTextDecorator((str, type) -> type == TDJSONOption.TextType.OPERATOR ? "<" + str + ">" : str);
+    assertEquals("<{>a<=>1<, >\"b c\"<=><[>1<, ><{>d<=>null<}><]><}>", TDJSONWriter.get().writeAsString(node, opt));
+  }
+
+  @Test public void testChunkWriter() {
+    TDNode node = TDJSONParser.get().parse(FileUtil.readResource(this.getClass(), "testdata.json"));
+    TDJSONOption[] opts = {
+        new TDJSONOption(),
+        TDJSONOption.ofIndentFactor(2).setAlwaysQuoteName(false).addNodeFilter(NodeFilter.exclude(".*/\\$id")),
+    };
+    for (TDJSONOption opt : opts) {
+      String expected = TDJSONWriter.get().writeAsString(node, opt);
+      for (int chunkSize : new int[]{1, 10, 100000}) {
+        StringBuilder sb = new StringBuilder();
+        TDJSONChunkWriter writer = new TDJSONChunkWriter(node, opt, chunkSize);
+        int chunks = 0;
+        while (writer.hasNext()) {
+          String chunk = writer.next();
+          assertTrue(chunk.length() >= chunkSize || !writer.hasNext());
+          sb.append(chunk);
+          chunks++;
+        }
+        assertEquals(expected, sb.toString());
+        assertTrue(chunkSize > expected.length() ? chunks == 1 : chunks > 1);
+      }
+    }
+
+    TDJSONChunkWriter writer = new TDJSONChunkWriter(TDJSONParser.get().parse("1"), new TDJSONOption(), 10);
+    assertEquals("1", writer.next());
+    assertFalse(writer.hasNext());
+  }
 }